@@ -0,0 +1,167 @@
+package org.datadog.jmxfetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanInfo;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenMBeanAttributeInfo;
+import javax.management.openmbean.OpenMBeanAttributeInfoSupport;
+import javax.management.openmbean.OpenMBeanInfoSupport;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Bean exposing scalar, composite and tabular attributes in configurable numbers, in the same
+ * shapes as the beans of the misbehaving JMX server used by the integration tests.
+ */
+public class BenchmarkBean implements DynamicMBean {
+    static final String SCALAR = "Scalar";
+    static final String COMPOSITE = "Composite";
+    static final String TABULAR = "Tabular";
+    static final String VALUE = "Value";
+    static final String ROW_NAME = "name";
+    static final String ROW_VALUE = "value";
+
+    private final int scalarAttributes;
+    private final int compositeAttributes;
+    private final int compositeValues;
+    private final int tabularAttributes;
+    private final int tabularRows;
+    private final CompositeType compositeType;
+    private final CompositeType rowType;
+    private final TabularType tabularType;
+    private final MBeanInfo info;
+    private double value;
+
+    /** Creates a bean with the given number of attributes of each kind. */
+    public BenchmarkBean(
+            int scalarAttributes,
+            int compositeAttributes,
+            int compositeValues,
+            int tabularAttributes,
+            int tabularRows) throws OpenDataException {
+        this.scalarAttributes = scalarAttributes;
+        this.compositeAttributes = compositeAttributes;
+        this.compositeValues = compositeValues;
+        this.tabularAttributes = tabularAttributes;
+        this.tabularRows = tabularRows;
+
+        String[] valueNames = new String[compositeValues];
+        OpenType<?>[] valueTypes = new OpenType<?>[compositeValues];
+        for (int i = 0; i < compositeValues; i++) {
+            valueNames[i] = VALUE + i;
+            valueTypes[i] = SimpleType.DOUBLE;
+        }
+        this.compositeType =
+                new CompositeType(COMPOSITE, COMPOSITE, valueNames, valueNames, valueTypes);
+        String[] rowItems = new String[] {ROW_NAME, ROW_VALUE};
+        this.rowType = new CompositeType(
+                "Row", "Row", rowItems, rowItems,
+                new OpenType<?>[] {SimpleType.STRING, SimpleType.DOUBLE});
+        this.tabularType = new TabularType(TABULAR, TABULAR, rowType, new String[] {ROW_NAME});
+
+        List<OpenMBeanAttributeInfo> attributes = new ArrayList<OpenMBeanAttributeInfo>();
+        for (int i = 0; i < scalarAttributes; i++) {
+            attributes.add(newAttributeInfo(SCALAR + i, SimpleType.DOUBLE));
+        }
+        for (int i = 0; i < compositeAttributes; i++) {
+            attributes.add(newAttributeInfo(COMPOSITE + i, compositeType));
+        }
+        for (int i = 0; i < tabularAttributes; i++) {
+            attributes.add(newAttributeInfo(TABULAR + i, tabularType));
+        }
+        this.info = new OpenMBeanInfoSupport(
+                BenchmarkBean.class.getName(),
+                "Benchmark bean",
+                attributes.toArray(new OpenMBeanAttributeInfoSupport[attributes.size()]),
+                null,
+                null,
+                null);
+    }
+
+    private static OpenMBeanAttributeInfoSupport newAttributeInfo(String name, OpenType<?> type) {
+        return new OpenMBeanAttributeInfoSupport(name, name, type, true, false, false);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        // Values change on every read, like live counters
+        value++;
+        try {
+            if (attribute.startsWith(SCALAR)) {
+                return value;
+            } else if (attribute.startsWith(COMPOSITE)) {
+                return newComposite();
+            } else if (attribute.startsWith(TABULAR)) {
+                return newTabular();
+            }
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private CompositeData newComposite() throws OpenDataException {
+        String[] names = new String[compositeValues];
+        Object[] values = new Object[compositeValues];
+        for (int i = 0; i < compositeValues; i++) {
+            names[i] = VALUE + i;
+            values[i] = value + i;
+        }
+        return new CompositeDataSupport(compositeType, names, values);
+    }
+
+    private TabularData newTabular() throws OpenDataException {
+        TabularData table = new TabularDataSupport(tabularType);
+        for (int i = 0; i < tabularRows; i++) {
+            table.put(new CompositeDataSupport(
+                    rowType,
+                    new String[] {ROW_NAME, ROW_VALUE},
+                    new Object[] {"row" + i, value + i}));
+        }
+        return table;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // skipped, as a real server would
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
@@ -0,0 +1,119 @@
+package org.datadog.jmxfetch;
+
+import org.datadog.jmxfetch.reporter.Reporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/** In-process MBean server populated with benchmark beans, and instances collecting from it. */
+public class BenchmarkFixture {
+    static final String DOMAIN = "org.datadog.jmxfetch.benchmark";
+
+    private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+    private final int scalarAttributes;
+    private final int compositeAttributes;
+    private final int compositeValues;
+    private final int tabularAttributes;
+
+    /** Registers beanCount beans sharing the same attribute layout. */
+    public BenchmarkFixture(
+            int beanCount,
+            int scalarAttributes,
+            int compositeAttributes,
+            int compositeValues,
+            int tabularAttributes,
+            int tabularRows) throws Exception {
+        this.scalarAttributes = scalarAttributes;
+        this.compositeAttributes = compositeAttributes;
+        this.compositeValues = compositeValues;
+        this.tabularAttributes = tabularAttributes;
+        for (int i = 0; i < beanCount; i++) {
+            server.registerMBean(
+                    new BenchmarkBean(
+                            scalarAttributes,
+                            compositeAttributes,
+                            compositeValues,
+                            tabularAttributes,
+                            tabularRows),
+                    new ObjectName(DOMAIN + ":type=Benchmark,name=bean" + i));
+        }
+    }
+
+    /** Returns a collecting instance reporting to the given reporter, not yet initialized. */
+    public Instance newInstance(Reporter reporter) {
+        AppConfig appConfig = AppConfig.builder()
+                .action(Collections.singletonList(AppConfig.ACTION_COLLECT))
+                .reporter(reporter)
+                .connectionFactory(new ConnectionFactory() {
+                    @Override
+                    public Connection createConnection(Map<String, Object> connectionParams) {
+                        return new BenchmarkConnection(server);
+                    }
+                })
+                .build();
+        return new Instance(newInstanceMap(), null, "benchmark", appConfig, null);
+    }
+
+    /** Instance configuration collecting every attribute of the benchmark beans. */
+    private Map<String, Object> newInstanceMap() {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        for (int i = 0; i < scalarAttributes; i++) {
+            attributes.put(BenchmarkBean.SCALAR + i, newAttribute("gauge", null));
+        }
+        for (int i = 0; i < compositeAttributes; i++) {
+            for (int j = 0; j < compositeValues; j++) {
+                attributes.put(
+                        BenchmarkBean.COMPOSITE + i + "." + BenchmarkBean.VALUE + j,
+                        newAttribute("rate", null));
+            }
+        }
+        for (int i = 0; i < tabularAttributes; i++) {
+            attributes.put(
+                    BenchmarkBean.TABULAR + i + "." + BenchmarkBean.ROW_VALUE,
+                    newAttribute(
+                            "monotonic_count",
+                            Collections.singletonMap("row", "$" + BenchmarkBean.ROW_NAME)));
+        }
+
+        Map<String, Object> include = new HashMap<String, Object>();
+        include.put("domain", DOMAIN);
+        include.put("attribute", attributes);
+        Map<String, Object> conf = new HashMap<String, Object>();
+        conf.put("include", include);
+        List<Object> confs = new ArrayList<Object>();
+        confs.add(conf);
+
+        Map<String, Object> instanceMap = new HashMap<String, Object>();
+        instanceMap.put("name", "benchmark");
+        instanceMap.put("collect_default_jvm_metrics", false);
+        instanceMap.put("max_returned_metrics", Integer.MAX_VALUE);
+        instanceMap.put("conf", confs);
+        return instanceMap;
+    }
+
+    private static Map<String, Object> newAttribute(String metricType, Map<String, String> tags) {
+        Map<String, Object> attribute = new HashMap<String, Object>();
+        attribute.put("metric_type", metricType);
+        if (tags != null) {
+            attribute.put("tags", tags);
+        }
+        return attribute;
+    }
+
+    private static class BenchmarkConnection extends Connection {
+        BenchmarkConnection(MBeanServer server) {
+            this.mbs = server;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return true;
+        }
+    }
+}
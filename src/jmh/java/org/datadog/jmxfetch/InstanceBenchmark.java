@@ -0,0 +1,103 @@
+package org.datadog.jmxfetch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Bean discovery, collection and reporting of an instance against an in-process server. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InstanceBenchmark {
+    @Param({"10", "100"})
+    int beans;
+
+    @Param({"10"})
+    int scalarAttributes;
+
+    @Param({"2"})
+    int compositeAttributes;
+
+    @Param({"5"})
+    int compositeValues;
+
+    @Param({"1"})
+    int tabularAttributes;
+
+    @Param({"10"})
+    int tabularRows;
+
+    private BenchmarkFixture fixture;
+    private NoopReporter reporter;
+    private Instance instance;
+
+    /** Registers the beans and initializes the instance collecting them. */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        fixture = new BenchmarkFixture(
+                beans,
+                scalarAttributes,
+                compositeAttributes,
+                compositeValues,
+                tabularAttributes,
+                tabularRows);
+        reporter = new NoopReporter();
+        instance = fixture.newInstance(reporter);
+        instance.init(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        instance.cleanUp();
+    }
+
+    /** Instance built by a discovery, cleaned up after each invocation. */
+    @State(Scope.Thread)
+    public static class Discovery {
+        Instance instance;
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            if (instance != null) {
+                instance.cleanUp();
+                instance = null;
+            }
+        }
+    }
+
+    /** Queries the beans and matches their attributes against the configuration. */
+    @Benchmark
+    public Instance discover(Discovery discovery) throws Exception {
+        discovery.instance = fixture.newInstance(reporter);
+        discovery.instance.init(false);
+        return discovery.instance;
+    }
+
+    /** Fetches the attribute values and builds the metrics. */
+    @Benchmark
+    public List<Metric> collect() throws Exception {
+        return instance.getMetrics();
+    }
+
+    /** Collects then computes rates and counters before handing points to the reporter. */
+    @Benchmark
+    public long collectAndReport() throws Exception {
+        reporter.sendMetrics(instance.getMetrics(), instance.getName(), false);
+        return reporter.getPoints();
+    }
+}
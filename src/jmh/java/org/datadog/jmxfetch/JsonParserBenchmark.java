@@ -0,0 +1,61 @@
+package org.datadog.jmxfetch;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing of the configuration payloads sent by the agent. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonParserBenchmark {
+    @Param({"10", "1000"})
+    int instances;
+
+    private byte[] payload;
+
+    /** Builds a payload with the given number of instances, each with a few conf entries. */
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder sb = new StringBuilder("{\"configs\": {\"jmx\": {\"instances\": [");
+        for (int i = 0; i < instances; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\": \"instance").append(i).append("\", ")
+                    .append("\"host\": \"localhost\", \"port\": ").append(9000 + i).append(", ")
+                    .append("\"tags\": {\"env\": \"benchmark\"}, \"conf\": [");
+            for (int j = 0; j < 5; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"include\": {\"domain\": \"org.datadog.jmxfetch.test\", ")
+                        .append("\"type\": \"type").append(j).append("\", ")
+                        .append("\"attribute\": {\"Value\": {\"metric_type\": \"gauge\", ")
+                        .append("\"alias\": \"benchmark.value").append(j).append("\"}}}}");
+            }
+            sb.append("]}");
+        }
+        sb.append("], \"init_config\": {\"is_jmx\": true}}}, \"timestamp\": 1}");
+        payload = sb.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return new JsonParser(payload).getJsonConfigs();
+    }
+}
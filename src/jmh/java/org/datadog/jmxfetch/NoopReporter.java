@@ -0,0 +1,34 @@
+package org.datadog.jmxfetch;
+
+import org.datadog.jmxfetch.reporter.Reporter;
+
+/** Reporter dropping everything, so that benchmarks only measure JMXFetch itself. */
+public class NoopReporter extends Reporter {
+    private long points;
+
+    @Override
+    protected void sendMetricPoint(
+            String metricType, String metricName, double value, String[] tags) {
+        points++;
+    }
+
+    @Override
+    protected void doSendServiceCheck(
+            String checkName, String status, String message, String[] tags) {}
+
+    @Override
+    public void displayMetricReached() {}
+
+    @Override
+    public void displayNonMatchingAttributeName(JmxAttribute jmxAttribute) {}
+
+    @Override
+    public void displayInstanceName(Instance instance) {}
+
+    @Override
+    public void displayMatchingAttributeName(JmxAttribute jmxAttribute, int rank, int limit) {}
+
+    public long getPoints() {
+        return points;
+    }
+}
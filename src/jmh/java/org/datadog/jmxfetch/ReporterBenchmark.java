@@ -0,0 +1,60 @@
+package org.datadog.jmxfetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Rate and counter computation of the reporter, independently of any collection. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReporterBenchmark {
+    private static final String[] METRIC_TYPES = {"gauge", "rate", "monotonic_count"};
+
+    @Param({"1000", "100000"})
+    int metricCount;
+
+    private NoopReporter reporter;
+    private List<Metric> metrics;
+    private double value;
+
+    /** Builds metrics of every type, each with its own series. */
+    @Setup(Level.Trial)
+    public void setup() {
+        reporter = new NoopReporter();
+        metrics = new ArrayList<Metric>(metricCount);
+        for (int i = 0; i < metricCount; i++) {
+            metrics.add(new Metric(
+                    "benchmark.metric" + (i % 100),
+                    METRIC_TYPES[i % METRIC_TYPES.length],
+                    new String[] {"instance:benchmark", "id:" + i},
+                    "benchmark"));
+        }
+    }
+
+    /** Reports the metrics with increasing values, as live counters would be. */
+    @Benchmark
+    public long sendMetrics() {
+        value++;
+        for (Metric metric : metrics) {
+            metric.setValue(value);
+        }
+        reporter.sendMetrics(metrics, "benchmark", false);
+        return reporter.getPoints();
+    }
+}
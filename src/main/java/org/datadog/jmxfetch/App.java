@@ -9,10 +9,12 @@ import org.datadog.jmxfetch.tasks.TaskMethod;
 import org.datadog.jmxfetch.tasks.TaskProcessException;
 import org.datadog.jmxfetch.tasks.TaskProcessor;
 import org.datadog.jmxfetch.tasks.TaskStatusHandler;
+import org.datadog.jmxfetch.tasks.TaskStatusListener;
 import org.datadog.jmxfetch.util.AppTelemetry;
 import org.datadog.jmxfetch.util.ByteArraySearcher;
 import org.datadog.jmxfetch.util.CustomLogger;
 import org.datadog.jmxfetch.util.FileHelper;
+import org.datadog.jmxfetch.util.JavaVersion;
 import org.datadog.jmxfetch.util.LogLevel;
 import org.datadog.jmxfetch.util.ServiceCheckHelper;
 
@@ -75,6 +77,7 @@ public class App {
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String COLLECTION_POOL_NAME = "jmxfetch-collectionPool";
     private static final String RECOVERY_POOL_NAME = "jmxfetch-recoveryPool";
+    private static final long SERIES_STATE_SAVE_PERIOD_MS = 60000;
 
     private static final ByteArraySearcher CONFIG_TERM_SEARCHER
             = new ByteArraySearcher(App.AD_CONFIG_TERM.getBytes());
@@ -89,9 +92,12 @@ public class App {
     private List<Instance> instances = new ArrayList<>();
     private Map<String, Instance> brokenInstanceMap = new ConcurrentHashMap<>();
     private AtomicBoolean reinit = new AtomicBoolean(false);
+    private long lastSeriesStateSave;
 
     private TaskProcessor collectionProcessor;
     private TaskProcessor recoveryProcessor;
+    private final InstanceScheduler instanceScheduler = new InstanceScheduler();
+    private final RecoveryScheduler recoveryScheduler = new RecoveryScheduler();
 
     private final AppConfig appConfig;
     private HttpClient client;
@@ -246,6 +252,18 @@ public class App {
             return 0;
         }
 
+        final Integer shardIndex = this.appConfig.getShardIndex();
+        if (shardIndex != null
+                && (shardIndex < 0 || shardIndex >= this.appConfig.getShardCount())) {
+            log.error("shard_index should be between 0 and shard_count - 1. Exiting.");
+            return 1;
+        }
+        if (this.appConfig.getShardCount() > 1
+                && this.appConfig.getAutoDiscoveryPipeEnabled()) {
+            log.error(ShardSupervisor.AUTO_DISCOVERY_PIPE_ERROR);
+            return 1;
+        }
+
         log.info("JMX Fetch " + this.appConfig.getVersion() + " has started");
 
         // set up the config status
@@ -264,6 +282,10 @@ public class App {
             this.getJsonConfigs();
         }
 
+        if (action.equals(AppConfig.ACTION_COLLECT) && this.appConfig.isPersistSeriesState()) {
+            this.loadSeriesState();
+        }
+
         // Initiate JMX Connections, get attributes that match the yaml configuration
         this.init(false);
 
@@ -349,6 +371,12 @@ public class App {
      * @return The create executor
      */
     private ExecutorService buildExecutorService(final int size, final String poolName) {
+        if (this.appConfig.isVirtualThreads()) {
+            ExecutorService executor = this.buildVirtualThreadExecutorService(poolName);
+            if (executor != null) {
+                return executor;
+            }
+        }
         return Executors.newFixedThreadPool(size, new ThreadFactory() {
 
             private final AtomicInteger counter = new AtomicInteger(0);
@@ -363,6 +391,32 @@ public class App {
         });
     }
 
+    /**
+     * Builds an executor service starting a virtual thread per task, or returns null if the JVM
+     * does not support virtual threads. Resolved by reflection as JMXFetch targets Java 7.
+     */
+    private ExecutorService buildVirtualThreadExecutorService(final String poolName) {
+        if (!JavaVersion.atLeastJava(21)) {
+            log.warn("Virtual threads require Java 21 or later, using a thread pool for "
+                    + poolName);
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, poolName + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory")
+                    .invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (Exception e) {
+            log.warn("Unable to create virtual threads, using a thread pool for " + poolName, e);
+            return null;
+        }
+    }
+
     private String getAutoDiscoveryName(final String config) {
         final String[] splitted = config.split(System.getProperty("line.separator"), 2);
 
@@ -509,8 +563,16 @@ public class App {
                 log.info("Reinitializing...");
                 init(true);
             }
+            if (this.appConfig.isPersistSeriesState()) {
+                this.saveSeriesState(false);
+            }
 
             if (instances.size() > 0) {
+                if (this.appConfig.isInstanceScheduling()) {
+                    // Waits for up to a check period while collecting due instances
+                    this.doScheduledIteration(start);
+                    continue;
+                }
                 this.doIteration();
             } else {
                 log.warn("No instance could be initiated. Retrying initialization.");
@@ -544,10 +606,52 @@ public class App {
         if (this.appConfig.getJmxfetchTelemetry()) {
             this.teardownTelemetry();
         }
+        // list_* actions do not collect, saving would overwrite the state with an empty one
+        if (this.appConfig.getAction().equals(AppConfig.ACTION_COLLECT)
+                && this.appConfig.isPersistSeriesState()) {
+            this.saveSeriesState(true);
+        }
+        this.instanceScheduler.clear();
+        this.recoveryScheduler.clear();
         this.collectionProcessor.stop();
         this.recoveryProcessor.stop();
     }
 
+    /** Restores the rate and counter state saved by a previous run, unless it is too old. */
+    void loadSeriesState() {
+        File file = new File(this.appConfig.getSeriesStateFile());
+        this.lastSeriesStateSave = System.currentTimeMillis();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            int restored = this.appConfig.getReporter().loadSeriesState(
+                    file, this.appConfig.getSeriesStateMaxAge() * 1000L);
+            log.info("Restored {} rate and counter samples from {}", restored, file);
+        } catch (IOException e) {
+            log.warn("Unable to restore the rate and counter state from " + file, e);
+        }
+    }
+
+    /**
+     * Saves the rate and counter state if it was not saved for a while, or when forced. The main
+     * loop and the shutdown hook may both save, so saves are serialized.
+     */
+    synchronized void saveSeriesState(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - this.lastSeriesStateSave < SERIES_STATE_SAVE_PERIOD_MS) {
+            return;
+        }
+        this.lastSeriesStateSave = now;
+        File file = new File(this.appConfig.getSeriesStateFile());
+        try {
+            this.appConfig.getReporter().saveSeriesState(file);
+            log.debug("Saved the rate and counter state to {}", file);
+        } catch (IOException e) {
+            log.warn("Unable to save the rate and counter state to " + file, e);
+        }
+    }
+
     /**
      * Iterates enabled instances collecting JMX metrics from them. Also attempts to fix any broken
      * instances.
@@ -560,11 +664,18 @@ public class App {
             List<InstanceTask<List<Metric>>> getMetricsTasks =
                     new ArrayList<>(this.instances.size());
 
+            // Instances may report their own metrics from the collection threads
+            final Reporter collectionReporter =
+                    this.appConfig.isConcurrentReporting() ? reporter : null;
+            // All the tasks of the batch share the collection timeout, counted from now
+            final long submitTime = System.currentTimeMillis();
             for (Instance instance : this.instances) {
-                getMetricsTasks.add(new MetricCollectionTask(instance));
+                getMetricsTasks.add(new MetricCollectionTask(
+                        instance, true, collectionReporter, submitTime));
             }
             if (this.appTelemetry != null) {
                 this.appTelemetry.setRunningInstanceCount(this.instances.size());
+                reporter.updateTelemetry(this.appTelemetry);
             }
 
             if (!this.collectionProcessor.ready()) {
@@ -577,22 +688,30 @@ public class App {
                                 this.appConfig.getThreadPoolSize(), COLLECTION_POOL_NAME));
             }
 
-            final List<TaskStatusHandler> statuses =
-                    this.collectionProcessor.processTasks(
-                            getMetricsTasks,
-                            this.appConfig.getCollectionTimeout(),
-                            TimeUnit.SECONDS,
-                            new TaskMethod<List<Metric>>() {
-                                @Override
-                                public TaskStatusHandler invoke(
-                                        final Instance instance,
-                                        final Future<List<Metric>> future,
-                                        final Reporter reporter) {
-                                    return App.processCollectionResults(instance, future, reporter);
-                                }
-                            });
-
-            this.processCollectionStatus(getMetricsTasks, statuses);
+            // Metrics of each instance are reported as soon as its collection completes
+            this.collectionProcessor.processTasksAsCompleted(
+                    getMetricsTasks,
+                    this.appConfig.getCollectionTimeout(),
+                    TimeUnit.SECONDS,
+                    new TaskMethod<List<Metric>>() {
+                        @Override
+                        public TaskStatusHandler invoke(
+                                final Instance instance,
+                                final Future<List<Metric>> future,
+                                final Reporter reporter) {
+                            return App.processCollectionResults(instance, future, reporter);
+                        }
+                    },
+                    new TaskStatusListener<List<Metric>>() {
+                        @Override
+                        public void onStatus(
+                                final InstanceTask<List<Metric>> task,
+                                final TaskStatusHandler status) {
+                            App.this.processCollectionStatus(
+                                    Collections.singletonList(task),
+                                    Collections.singletonList(status));
+                        }
+                    });
 
         } catch (Exception e) {
             // INTERNAL ERROR
@@ -615,7 +734,7 @@ public class App {
         }
 
         // Attempt to fix broken instances
-        this.fixBrokenInstances(reporter);
+        this.recoverBrokenInstances(reporter);
 
         try {
             this.appConfig.getStatus().flush();
@@ -624,6 +743,205 @@ public class App {
         }
     }
 
+    /**
+     * Collects every instance as it becomes due, each one on its own schedule, and reports its
+     * metrics as soon as its collection completes. Returns after a check period so that the main
+     * loop can look for configuration changes. Also attempts to fix any broken instances.
+     */
+    void doScheduledIteration(final long start) {
+        final Reporter reporter = this.appConfig.getReporter();
+        final long checkPeriod = this.appConfig.getCheckPeriod();
+        final long timeout = TimeUnit.SECONDS.toMillis(this.appConfig.getCollectionTimeout());
+        final long end = start + checkPeriod;
+        loopCounter++;
+
+        if (this.appTelemetry != null) {
+            this.appTelemetry.setRunningInstanceCount(this.instances.size());
+        }
+
+        if (!this.collectionProcessor.ready()) {
+            log.warn(
+                    "Executor has to be replaced for collection processor, "
+                    + "previous one hogging threads");
+            this.collectionProcessor.stop();
+            this.collectionProcessor.setThreadPoolExecutor(
+                    this.buildExecutorService(
+                            this.appConfig.getThreadPoolSize(), COLLECTION_POOL_NAME));
+        }
+
+        long now = System.currentTimeMillis();
+        this.instanceScheduler.sync(this.instances, now);
+        try {
+            while (now < end) {
+                this.instanceScheduler.submitDue(this.collectionProcessor,
+                        this.appConfig.isConcurrentReporting() ? reporter : null, now);
+
+                final long wakeUp = Math.min(end, Math.min(
+                        this.instanceScheduler.getNextDueTime(),
+                        this.instanceScheduler.getNextTimeoutTime(timeout)));
+                final InstanceScheduler.ScheduledCollection collection =
+                        this.instanceScheduler.pollCompleted(Math.max(0, wakeUp - now));
+                now = System.currentTimeMillis();
+
+                if (collection != null) {
+                    this.processScheduledCollection(collection, checkPeriod, now, reporter);
+                }
+                for (final InstanceScheduler.ScheduledCollection timedOut
+                        : this.instanceScheduler.cancelTimedOut(now, timeout)) {
+                    log.warn("Collection of instance " + timedOut.getInstance()
+                            + " did not complete within the collection timeout");
+                    this.processScheduledCollection(timedOut, checkPeriod, now, reporter);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn(e.getMessage(), e);
+        }
+
+        // Attempt to fix broken instances, the new instances get scheduled on next iteration
+        this.recoverBrokenInstances(reporter);
+
+        try {
+            this.appConfig.getStatus().flush();
+        } catch (Exception e) {
+            log.error("Unable to flush stats.", e);
+        }
+    }
+
+    private void processScheduledCollection(
+            final InstanceScheduler.ScheduledCollection collection,
+            final long checkPeriod,
+            final long now,
+            final Reporter reporter) {
+        final Instance instance = collection.getInstance();
+        final TaskStatusHandler status =
+                App.processCollectionResults(instance, collection, reporter);
+        this.processCollectionStatus(
+                Collections.<InstanceTask<List<Metric>>>singletonList(collection.getTask()),
+                Collections.singletonList(status));
+
+        if (this.brokenInstanceMap.get(instance.toString()) == instance) {
+            // Will be replaced by a new instance once fixed
+            return;
+        }
+        // Keep the instance on its own cadence, unless its collection took longer than its period
+        final long dueTime = collection.getSubmitTime() + instance.getCollectionPeriod(checkPeriod);
+        this.instanceScheduler.schedule(instance, Math.max(dueTime, now));
+    }
+
+    private void recoverBrokenInstances(final Reporter reporter) {
+        if (this.appConfig.isRecoveryScheduling()) {
+            this.scheduleBrokenInstancesRecovery(reporter);
+        } else {
+            this.fixBrokenInstances(reporter);
+        }
+    }
+
+    /**
+     * Handles the recovery attempts of broken instances which completed since the last call, then
+     * submits the attempts which are due. Never waits for an attempt to complete.
+     */
+    private void scheduleBrokenInstancesRecovery(final Reporter reporter) {
+        final long now = System.currentTimeMillis();
+        final long timeout = TimeUnit.SECONDS.toMillis(this.appConfig.getReconnectionTimeout());
+
+        final List<RecoveryScheduler.RecoveryAttempt> attempts =
+                this.recoveryScheduler.cancelTimedOut(now, timeout);
+        attempts.addAll(this.recoveryScheduler.pollCompleted());
+        for (final RecoveryScheduler.RecoveryAttempt attempt : attempts) {
+            final Instance instance = attempt.getTask().getInstance();
+            final TaskStatusHandler status =
+                    App.processRecoveryResults(instance, attempt, reporter);
+            try {
+                status.raiseForStatus();
+                log.info("Recovered instance {}", instance);
+                this.recoveryScheduler.recovered(attempt);
+            } catch (Throwable e) {
+                if (instance.isReconnectInPlace()) {
+                    instance.disconnectAsync();
+                } else {
+                    instance.cleanUpAsync();
+                }
+                this.recoveryScheduler.failed(attempt, now, this.appConfig.getCheckPeriod());
+            }
+            final List<InstanceTask<Void>> tasks =
+                    Collections.<InstanceTask<Void>>singletonList(attempt.getTask());
+            final List<TaskStatusHandler> statuses = Collections.singletonList(status);
+            this.processFixedStatus(tasks, statuses);
+            this.processStatus(tasks, statuses);
+        }
+
+        if (this.brokenInstanceMap.isEmpty()) {
+            return;
+        }
+
+        if (!this.recoveryProcessor.ready()) {
+            log.warn(
+                    "Executor has to be replaced for recovery processor, "
+                    + "previous one hogging threads");
+            this.recoveryProcessor.stop();
+            this.recoveryProcessor.setThreadPoolExecutor(
+                    this.buildExecutorService(this.appConfig.getReconnectionThreadPoolSize(),
+                            RECOVERY_POOL_NAME));
+        }
+
+        for (final Instance instance : this.brokenInstanceMap.values()) {
+            if (this.recoveryScheduler.track(instance, now)) {
+                log.warn(
+                        "Instance "
+                                + instance
+                                + " didn't return any metrics. "
+                                + "Maybe the server got disconnected ? Trying to reconnect.");
+
+                // Stop collecting the broken instance and close its connections asynchronously
+                this.releaseBrokenInstance(reporter, instance);
+                this.instances.remove(instance);
+            }
+            if (this.recoveryScheduler.isDue(instance, now)) {
+                this.recoveryScheduler.submit(
+                        instance,
+                        new InstanceInitializingTask(this.getRecoveringInstance(instance), true),
+                        this.recoveryProcessor,
+                        now);
+            }
+        }
+
+        final Status status = this.appConfig.getStatus();
+        for (final RecoveryScheduler.RecoveryState state : this.recoveryScheduler.getStates()) {
+            status.addRecoveryStats(
+                    state.getInstance().getCheckName(),
+                    state.getInstance().getName(),
+                    state.getCircuitState(),
+                    state.getFailedAttempts(),
+                    state.getNextAttemptTime());
+        }
+    }
+
+    /**
+     * Closes the connection of a broken instance asynchronously. Instances reconnecting in place
+     * keep their state, including their rates and counters which resume after a short outage.
+     */
+    private void releaseBrokenInstance(final Reporter reporter, final Instance instance) {
+        // Gauges are reported again as soon as the instance recovers
+        reporter.clearGaugesAggregator(instance.getName());
+        if (instance.isReconnectInPlace()) {
+            instance.disconnectAsync();
+            return;
+        }
+        // Clearing rates aggregator so we won't compute wrong rates if we can reconnect
+        reporter.clearRatesAggregator(instance.getName());
+        reporter.clearCountersAggregator(instance.getName());
+        instance.cleanUpAsync();
+    }
+
+    /** Returns the instance to initialize again in order to recover a broken instance. */
+    private Instance getRecoveringInstance(final Instance instance) {
+        if (instance.isReconnectInPlace()) {
+            return instance;
+        }
+        // Resetting the instance
+        return new Instance(instance, this.appConfig);
+    }
+
     private void fixBrokenInstances(final Reporter reporter) {
         if (this.brokenInstanceMap.isEmpty()) {
             return;
@@ -634,10 +952,6 @@ public class App {
                 new ArrayList<>(this.brokenInstanceMap.values().size());
 
         for (final Instance instance : this.brokenInstanceMap.values()) {
-            // Clearing rates aggregator so we won't compute wrong rates if we can reconnect
-            reporter.clearRatesAggregator(instance.getName());
-            reporter.clearCountersAggregator(instance.getName());
-
             log.warn(
                     "Instance "
                             + instance
@@ -647,14 +961,12 @@ public class App {
             // Remove the broken instance from the good instance list so jmxfetch won't try to
             // collect metrics from this broken instance during next collection and close
             // ongoing connections (do so asynchronously to avoid locking on network timeout).
-            instance.cleanUpAsync();
+            this.releaseBrokenInstance(reporter, instance);
             this.instances.remove(instance);
 
-            // Resetting the instance
-            final Instance newInstance = new Instance(instance, this.appConfig);
-
             // create the initializing task
-            fixInstanceTasks.add(new InstanceInitializingTask(newInstance, true));
+            fixInstanceTasks.add(
+                    new InstanceInitializingTask(this.getRecoveringInstance(instance), true));
         }
 
         try {
@@ -910,10 +1222,18 @@ public class App {
             final Map<String, Object> instanceMap,
             final Map<String, Object> initConfig,
             final String checkName,
-            final AppConfig appConfig) {
+            final AppConfig appConfig,
+            final List<Instance> previousInstances) {
 
+        Instance previous = null;
+        for (final Instance instance : previousInstances) {
+            if (instance.hasConfiguration(checkName, instanceMap, initConfig)) {
+                previous = instance;
+                break;
+            }
+        }
         try {
-            return new Instance(instanceMap, initConfig, checkName, appConfig, null);
+            return new Instance(instanceMap, initConfig, checkName, appConfig, null, previous);
         } catch (Exception e) {
             String warning = "Unable to create instance. Please check your yaml file";
             appConfig.getStatus().addInitFailedCheck(checkName, warning, Status.STATUS_ERROR);
@@ -922,12 +1242,27 @@ public class App {
         return null;
     }
 
+    private boolean isInShard(final Map<String, Object> instanceMap, final String checkName) {
+        String instanceName = Instance.getInstanceName(instanceMap, checkName);
+        if (this.appConfig.isInShard(instanceName != null ? instanceName : checkName)) {
+            return true;
+        }
+        log.debug("Skipping instance '{}' of {}, collected by another shard",
+                instanceName, checkName);
+        return false;
+    }
+
     /** Initializes instances and metric collection. */
     public void init(final boolean forceNewConnection) {
+        // Instances whose configuration did not change may reuse their initialization state
+        final List<Instance> previousInstances = new ArrayList<>(this.instances);
+        previousInstances.addAll(this.brokenInstanceMap.values());
+
         log.info("Cleaning up instances...");
         this.clearInstances(this.instances);
         this.clearInstances(this.brokenInstanceMap.values());
         this.brokenInstanceMap.clear();
+        this.recoveryScheduler.clear();
 
         final List<Instance> newInstances = new ArrayList<>();
         final Set<String> instanceNamesSeen = new HashSet<>();
@@ -980,6 +1315,9 @@ public class App {
                     }
                     instanceNamesSeen.add(instanceName);
                 }
+                if (!this.isInShard(configInstance, name)) {
+                    continue;
+                }
                 // Create a new Instance object
                 log.info("Instantiating instance for: {}", name);
                 final Instance instance =
@@ -987,7 +1325,8 @@ public class App {
                                 configInstance,
                                 (Map<String, Object>) yamlConfig.getInitConfig(),
                                 name,
-                                this.appConfig);
+                                this.appConfig,
+                                previousInstances);
                 newInstances.add(instance);
             }
         }
@@ -1004,6 +1343,9 @@ public class App {
                         (List<Map<String, Object>>) checkConfig.get("instances");
                 final String checkName = (String) checkConfig.get("check_name");
                 for (Map<String, Object> configInstance : configInstances) {
+                    if (!this.isInShard(configInstance, checkName)) {
+                        continue;
+                    }
                     log.info("Instantiating instance for: " + checkName);
                     final String instanceName = (String) configInstance.get("name");
                     if (instanceName != null) {
@@ -1016,7 +1358,8 @@ public class App {
                         instanceNamesSeen.add(instanceName);
                     }
                     final Instance instance =
-                            instantiate(configInstance, initConfig, checkName, this.appConfig);
+                            instantiate(configInstance, initConfig, checkName, this.appConfig,
+                                    previousInstances);
                     newInstances.add(instance);
                 }
             }
@@ -1027,7 +1370,7 @@ public class App {
             log.info("Adding jmxfetch telemetry check");
             final Instance instance = instantiate(getTelemetryInstanceConfig(),
                         getTelemetryInitConfig(), "jmxfetch_telemetry_check",
-                        this.appConfig);
+                        this.appConfig, previousInstances);
             newInstances.add(instance);
         }
 
@@ -1322,9 +1665,23 @@ public class App {
                     CustomLogger.laconic(log, LogLevel.WARN, instanceMessage, 0);
                 }
 
-                if (numberOfMetrics > 0) {
-                    reporter.sendMetrics(
-                            metrics, instance.getName(), instance.getCanonicalRateConfig());
+                if (instance.isPartialCollectionReached()) {
+                    final String partialMessage =
+                            "Collection of instance "
+                                    + instance.getName()
+                                    + " did not read all attributes within the collection"
+                                    + " timeout, reporting partial results. The remaining"
+                                    + " attributes are collected first on the next run.";
+                    instanceMessage = instanceMessage == null
+                            ? partialMessage : instanceMessage + " " + partialMessage;
+                    instanceStatus = Status.STATUS_WARNING;
+                    CustomLogger.laconic(log, LogLevel.WARN, partialMessage, 0);
+                }
+
+                // Metrics were already reported by the collection task when reporting concurrently
+                if (numberOfMetrics > 0 && !this.appConfig.isConcurrentReporting()) {
+                    reporter.sendMetrics(metrics, instance.getName(),
+                            instance.getCanonicalRateConfig(), instance.getSendOnChangeHeartbeat());
                 }
 
             } catch (TaskProcessException te) {
@@ -53,6 +53,7 @@ public class AppConfig {
     private static final String AD_WIN_PIPE_PATH = "\\\\.\\pipe\\";
     private static final String AD_PIPE_NAME = "dd-auto_discovery";
     private static final String AD_LAUNCH_FILE = "jmx.launch";
+    private static final String SERIES_STATE_FILE = "jmxfetch_series_state";
 
     private static final int DEFAULT_THREAD_POOL_SIZE = 3;
     private static final int DEFAULT_COLLECTION_TO_S = 60;
@@ -164,6 +165,14 @@ public class AppConfig {
     @Builder.Default
     private int statsdSocketTimeout = 0;
 
+    @Parameter(
+           names = {"--statsd_batch"},
+           description = "Write metrics to statsd in bulk, with their lines pre-serialized once "
+                   + "per series, instead of one at a time through the statsd client",
+           required = false)
+    @Builder.Default
+    private boolean statsdBatch = false;
+
     @Parameter(
             names = {"--check", "-c"},
             description = "Yaml file name to read (must be in the confd directory)",
@@ -211,6 +220,86 @@ public class AppConfig {
     @Builder.Default
     private int reconnectionTimeout = DEFAULT_RECONNECTION_TO_S;
 
+    @Parameter(
+            names = {"--instance_scheduling"},
+            description =
+                    "Schedule the collection of each instance independently instead of "
+                            + "collecting all instances in lockstep every check period",
+            required = false)
+    @Builder.Default
+    private boolean instanceScheduling = false;
+
+    @Parameter(
+            names = {"--recovery_scheduling"},
+            description =
+                    "Recover broken instances in the background with an exponential backoff "
+                            + "between attempts instead of at every collection",
+            required = false)
+    @Builder.Default
+    private boolean recoveryScheduling = false;
+
+    @Parameter(
+            names = {"--virtual_threads"},
+            description =
+                    "Run collection and reconnection tasks on virtual threads instead of thread "
+                            + "pools, on Java 21 or later",
+            required = false)
+    @Builder.Default
+    private boolean virtualThreads = false;
+
+    @Parameter(
+            names = {"--share_connections"},
+            description =
+                    "Share a single connection between the instances targeting the same JVM "
+                            + "with the same connection parameters",
+            required = false)
+    @Builder.Default
+    private boolean shareConnections = false;
+
+    @Parameter(
+            names = {"--concurrent_reporting"},
+            description =
+                    "Report the metrics of each instance from its collection thread instead of "
+                            + "from the main loop",
+            required = false)
+    @Builder.Default
+    private boolean concurrentReporting = false;
+
+    @Parameter(
+            names = {"--persist_series_state"},
+            description =
+                    "Save the rate and counter state to the temporary directory periodically and "
+                            + "on shutdown, and restore it on startup",
+            required = false)
+    @Builder.Default
+    private boolean persistSeriesState = false;
+
+    @Parameter(
+            names = {"--series_state_max_age"},
+            description =
+                    "Maximum age (in seconds) of the rate and counter samples restored on startup",
+            validateWith = PositiveIntegerValidator.class,
+            required = false)
+    @Builder.Default
+    private int seriesStateMaxAge = 300;
+
+    @Parameter(
+            names = {"--shard_count"},
+            description =
+                    "Number of shards the instances are partitioned across by name. Without a "
+                            + "shard index, a worker process is started for each shard. Cannot be "
+                            + "used with the auto-discovery pipe",
+            validateWith = PositiveIntegerValidator.class,
+            required = false)
+    @Builder.Default
+    private int shardCount = 1;
+
+    @Parameter(
+            names = {"--shard_index"},
+            description = "Index of the shard collected by this process, from 0 to shard_count - 1",
+            required = false)
+    private Integer shardIndex;
+
     @Parameter(
             names = {"--ad_enabled", "--sd_enabled", "-w"},
             description = "Enable Auto Discovery.",
@@ -319,13 +408,15 @@ public class AppConfig {
     public boolean updateStatus() {
         if (statusLocation != null) {
             status = new Status(statusLocation);
-            return true;
         } else if (ipcHost != null && ipcPort > 0) {
             status = new Status(ipcHost, ipcPort);
-            return true;
+        } else {
+            return false;
         }
-
-        return false;
+        if (shardIndex != null) {
+            status.addShardInfo(shardIndex, shardCount);
+        }
+        return true;
     }
 
     public boolean remoteEnabled() {
@@ -384,6 +475,55 @@ public class AppConfig {
         return collectionTimeout;
     }
 
+    public boolean isInstanceScheduling() {
+        return instanceScheduling;
+    }
+
+    public boolean isRecoveryScheduling() {
+        return recoveryScheduling;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public boolean isConcurrentReporting() {
+        return concurrentReporting;
+    }
+
+    public boolean isPersistSeriesState() {
+        return persistSeriesState;
+    }
+
+    public int getSeriesStateMaxAge() {
+        return seriesStateMaxAge;
+    }
+
+    /** Returns the file the rate and counter state is saved to, one per shard. */
+    public String getSeriesStateFile() {
+        String file = getTmpDirectory() + "/" + SERIES_STATE_FILE;
+        return getShardIndex() != null ? file + "." + getShardIndex() : file;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public Integer getShardIndex() {
+        return shardIndex;
+    }
+
+    /** Returns whether or not this process starts and supervises a worker process per shard. */
+    public boolean isShardSupervisor() {
+        return getShardCount() > 1 && getShardIndex() == null;
+    }
+
+    /** Returns whether or not the instance with the given name is collected by this process. */
+    public boolean isInShard(String instanceName) {
+        Integer index = getShardIndex();
+        return index == null || ShardSupervisor.getShard(instanceName, getShardCount()) == index;
+    }
+
     public int getReconnectionTimeout() {
         return reconnectionTimeout;
     }
@@ -500,10 +640,18 @@ public class AppConfig {
         return serviceNameProvider;
     }
 
-    public ConnectionFactory getConnectionFactory() {
+    /** Returns the connection factory, sharing its connections if enabled. */
+    public synchronized ConnectionFactory getConnectionFactory() {
+        if (shareConnections && !(connectionFactory instanceof SharedConnectionFactory)) {
+            connectionFactory = new SharedConnectionFactory(connectionFactory);
+        }
         return connectionFactory;
     }
 
+    public boolean isShareConnections() {
+        return shareConnections;
+    }
+
     /**
      * @return Whether or not internal threads will be run as daemon.
      */
@@ -527,6 +675,10 @@ public class AppConfig {
         return statsdSocketTimeout;
     }
 
+    public boolean isStatsdBatch() {
+        return statsdBatch;
+    }
+
     public String getVersion() {
         return MetadataHelper.getVersion();
     }
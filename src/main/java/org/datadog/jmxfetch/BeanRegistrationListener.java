@@ -0,0 +1,45 @@
+package org.datadog.jmxfetch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+/**
+ * Records the beans registered and unregistered on an MBean server, as notified by its delegate,
+ * until the instance applies them to its bean list.
+ */
+class BeanRegistrationListener implements NotificationListener {
+    private final Map<ObjectName, Boolean> pendingChanges =
+            new LinkedHashMap<ObjectName, Boolean>();
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!(notification instanceof MBeanServerNotification)) {
+            return;
+        }
+        ObjectName beanName = ((MBeanServerNotification) notification).getMBeanName();
+        boolean registered =
+                MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType());
+        synchronized (pendingChanges) {
+            // Only the latest change of a bean matters
+            pendingChanges.remove(beanName);
+            pendingChanges.put(beanName, registered);
+        }
+    }
+
+    /**
+     * Returns the changes notified since the last call, mapping each bean name to true if the
+     * bean was registered and false if it was unregistered.
+     */
+    Map<ObjectName, Boolean> drainChanges() {
+        synchronized (pendingChanges) {
+            Map<ObjectName, Boolean> changes =
+                    new LinkedHashMap<ObjectName, Boolean>(pendingChanges);
+            pendingChanges.clear();
+            return changes;
+        }
+    }
+}
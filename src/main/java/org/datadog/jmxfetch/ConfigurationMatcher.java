@@ -0,0 +1,70 @@
+package org.datadog.jmxfetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Narrows down the configurations of an instance to the ones that may match the attributes of a
+ * bean. The domain and class filters only depend on the bean, so they are evaluated once per
+ * distinct domain and class name rather than for every attribute. Candidates keep the order of
+ * the configuration list, so the first matching configuration still wins.
+ */
+class ConfigurationMatcher {
+    private final List<Configuration> configurations;
+    private final ConcurrentMap<String, List<Configuration>> candidatesByDomain =
+            new ConcurrentHashMap<String, List<Configuration>>();
+    private final ConcurrentMap<String, List<Configuration>> candidatesByClassName =
+            new ConcurrentHashMap<String, List<Configuration>>();
+
+    ConfigurationMatcher(List<Configuration> configurations) {
+        this.configurations = configurations;
+    }
+
+    /** Returns the configurations that may match the attributes of a bean. */
+    List<Configuration> getCandidates(String domain, String className) {
+        List<Configuration> domainCandidates = getCandidates(domain);
+        if (className == null) {
+            // Leave it to the attribute matching to deal with
+            return domainCandidates;
+        }
+
+        String key = domain + ":" + className;
+        List<Configuration> candidates = candidatesByClassName.get(key);
+        if (candidates == null) {
+            candidates = new ArrayList<Configuration>();
+            for (Configuration conf : domainCandidates) {
+                Filter include = conf.getInclude();
+                Filter exclude = conf.getExclude();
+                if (JmxAttribute.includeMatchName(
+                                className, include.getClassName(), include.getClassNameRegex())
+                        && !JmxAttribute.excludeMatchName(
+                                className, exclude.getClassName(), exclude.getClassNameRegex())) {
+                    candidates.add(conf);
+                }
+            }
+            candidatesByClassName.put(key, candidates);
+        }
+        return candidates;
+    }
+
+    private List<Configuration> getCandidates(String domain) {
+        List<Configuration> candidates = candidatesByDomain.get(domain);
+        if (candidates == null) {
+            candidates = new ArrayList<Configuration>();
+            for (Configuration conf : configurations) {
+                Filter include = conf.getInclude();
+                Filter exclude = conf.getExclude();
+                if (JmxAttribute.includeMatchName(
+                                domain, include.getDomain(), include.getDomainRegex())
+                        && !JmxAttribute.excludeMatchName(
+                                domain, exclude.getDomain(), exclude.getDomainRegex())) {
+                    candidates.add(conf);
+                }
+            }
+            candidatesByDomain.put(domain, candidates);
+        }
+        return candidates;
+    }
+}
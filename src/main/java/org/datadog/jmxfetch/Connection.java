@@ -15,13 +15,18 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.remote.JMXConnector;
@@ -35,6 +40,7 @@ public class Connection {
     protected MBeanServerConnection mbs;
     protected Map<String, Object> env;
     protected JMXServiceURL address;
+    private final MBeanInfoCache mbeanInfoCache = new MBeanInfoCache();
 
     /** Gets attributes for matching bean name. */
     public MBeanInfo getMBeanInfo(ObjectName beanName)
@@ -43,6 +49,22 @@ public class Connection {
         return mbs.getMBeanInfo(beanName);
     }
 
+    /**
+     * Gets attributes for matching bean name, reusing the info of a previous bean of the same
+     * class and structure when the server flags it as immutable. The class name may be null if
+     * unknown.
+     */
+    public MBeanInfo getMBeanInfo(ObjectName beanName, String className)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                    IOException {
+        MBeanInfo info = className != null ? mbeanInfoCache.get(beanName, className) : null;
+        if (info == null) {
+            info = getMBeanInfo(beanName);
+            mbeanInfoCache.put(beanName, info);
+        }
+        return info;
+    }
+
     /** Queries beans on specific scope. Returns set of matching query names.. */
     public Set<ObjectName> queryNames(ObjectName name) throws IOException {
         String scope = (name != null) ? name.toString() : "*:*";
@@ -50,9 +72,18 @@ public class Connection {
         return mbs.queryNames(name, null);
     }
 
+    /** Queries beans on specific scope. Returns the names and class names of the beans. */
+    public Set<ObjectInstance> queryMBeans(ObjectName name) throws IOException {
+        String scope = (name != null) ? name.toString() : "*:*";
+        log.debug("Querying beans on scope: " + scope);
+        return mbs.queryMBeans(name, null);
+    }
+
     protected void createConnection() throws IOException {
         this.env.put("attribute.remote.x.request.waiting.timeout", CONNECTION_TIMEOUT);
         closeConnector();
+        // The server may have been restarted with other classes
+        mbeanInfoCache.clear();
         log.info("Connecting to: " + this.address);
         connector = JMXConnectorFactory.connect(this.address, this.env);
         mbs = connector.getMBeanServerConnection();
@@ -69,6 +100,33 @@ public class Connection {
         return attr;
     }
 
+    /**
+     * Gets the values of several attributes of a bean in a single call. Attributes that could
+     * not be read by the server are missing from the returned map.
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, String[] attributeNames)
+            throws InstanceNotFoundException, ReflectionException, IOException {
+        AttributeList attributes = mbs.getAttributes(objectName, attributeNames);
+        Map<String, Object> values = new HashMap<String, Object>(attributes.size());
+        for (Attribute attribute : attributes.asList()) {
+            values.put(attribute.getName(), attribute.getValue());
+        }
+        return values;
+    }
+
+    /** Subscribes a listener to the notifications emitted by a bean. */
+    public void addNotificationListener(
+            ObjectName name, NotificationListener listener, NotificationFilter filter)
+            throws InstanceNotFoundException, IOException {
+        mbs.addNotificationListener(name, listener, filter, null);
+    }
+
+    /** Unsubscribes a listener from the notifications emitted by a bean. */
+    public void removeNotificationListener(ObjectName name, NotificationListener listener)
+            throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+        mbs.removeNotificationListener(name, listener);
+    }
+
     /** Closes the connector. */
     public void closeConnector() {
         if (connector != null) {
@@ -11,40 +11,65 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectInstance;
 import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
 import javax.security.auth.login.FailedLoginException;
 
 @Slf4j
 public class Instance {
     private static final int MAX_RETURNED_METRICS = 350;
     private static final int DEFAULT_REFRESH_BEANS_PERIOD = 600;
+    private static final int DEFAULT_SEND_ON_CHANGE_HEARTBEAT = 60;
+    // Share of the collection timeout after which a partial collection stops reading attributes
+    private static final double PARTIAL_COLLECTION_DEADLINE_RATIO = 0.8;
+    private static final long BEAN_DISCOVERY_KEEP_ALIVE_SECONDS = 60;
     public static final String PROCESS_NAME_REGEX = "process_name_regex";
     public static final String JVM_DIRECT = "jvm_direct";
     public static final String ATTRIBUTE = "Attribute: ";
 
     private Set<ObjectName> beans;
+    private Map<ObjectName, String> beanClassNames;
     private List<String> beanScopes;
     private List<Configuration> configurationList = new ArrayList<Configuration>();
+    private ConfigurationMatcher configurationMatcher;
     private List<JmxAttribute> matchingAttributes;
+    private Map<ObjectName, List<JmxAttribute>> matchingAttributesByBean;
     private HashSet<JmxAttribute> failingAttributes;
+    private List<Metric> metrics;
     private Integer initialRefreshBeansPeriod;
     private Integer refreshBeansPeriod;
     private long lastCollectionTime;
@@ -60,6 +85,7 @@ public class Instance {
     private String serviceCheckPrefix;
     private int maxReturnedMetrics;
     private boolean limitReached;
+    private int metricsCount;
     private Connection connection;
     private AppConfig appConfig;
     private Boolean cassandraAliasing;
@@ -69,7 +95,27 @@ public class Instance {
     private MBeanServer mbs;
     private Boolean normalizeBeanParamTags;
     private Boolean useCanonicalBeanName;
+    private Boolean bulkAttributeFetch;
+    private Boolean incrementalBeanRefresh;
+    private BeanRegistrationListener beanRegistrationListener;
+    private Boolean cacheMBeanInfo;
+    private Boolean partialCollection;
+    private boolean partialCollectionReached;
+    private int collectionResumeIndex;
+    private Integer slowAttributeThreshold;
+    private Boolean reuseInitState;
+    private Map<ObjectName, MBeanInfo> beanInfos;
+    private Map<ObjectName, MBeanInfo> previousBeanInfos;
+    private Integer beanDiscoveryThreads;
+    private ThreadPoolExecutor beanDiscoveryExecutor;
+    private Boolean reconnectInPlace;
+    private Boolean sendOnChange;
+    private Integer sendOnChangeHeartbeat;
+    private Set<ObjectName> matchedBeans;
+    private Map<ObjectName, MBeanInfo> discoveredBeanInfos;
     private Map<String, Map.Entry<String, String>> dynamicTagsCache;
+    // Held while collecting, so that a collection which timed out is done before a reinit
+    private final ReentrantLock collectionLock = new ReentrantLock();
 
     /** Constructor, instantiates Instance based of a previous instance and appConfig. */
     public Instance(Instance instance, AppConfig appConfig) {
@@ -82,26 +128,44 @@ public class Instance {
                         : null,
                 instance.getCheckName(),
                 appConfig,
-                instance.serviceNameProvider);
+                instance.serviceNameProvider,
+                instance);
     }
 
     /** Default constructor, builds an Instance from the provided instance map and init configs. */
-    @SuppressWarnings("unchecked")
     public Instance(
             Map<String, Object> instanceMap,
             Map<String, Object> initConfig,
             String checkName,
             AppConfig appConfig,
             ServiceNameProvider serviceNameProvider) {
+        this(instanceMap, initConfig, checkName, appConfig, serviceNameProvider, null);
+    }
+
+    /**
+     * Builds an Instance replacing a previous one with the same configuration. When both reuse
+     * their initialization state, the configurations and the bean info of the previous instance
+     * are reused instead of being parsed and introspected again.
+     */
+    @SuppressWarnings("unchecked")
+    Instance(
+            Map<String, Object> instanceMap,
+            Map<String, Object> initConfig,
+            String checkName,
+            AppConfig appConfig,
+            ServiceNameProvider serviceNameProvider,
+            Instance previous) {
         this.appConfig = appConfig;
         this.instanceMap =
                 instanceMap != null ? new HashMap<String, Object>(instanceMap) : null;
         this.initConfig = initConfig != null ? new HashMap<String, Object>(initConfig) : null;
-        this.instanceName = (String) instanceMap.get("name");
         this.tags = getTagsMap(instanceMap.get("tags"), appConfig);
         this.checkName = checkName;
         this.matchingAttributes = new ArrayList<JmxAttribute>();
+        this.matchingAttributesByBean = new HashMap<ObjectName, List<JmxAttribute>>();
         this.failingAttributes = new HashSet<JmxAttribute>();
+        this.metrics = new ArrayList<Metric>();
+        this.beanClassNames = new HashMap<ObjectName, String>();
         if (appConfig.getRefreshBeansPeriod() == null) {
             this.refreshBeansPeriod = (Integer) instanceMap.get("refresh_beans");
             if (this.refreshBeansPeriod == null) {
@@ -165,22 +229,12 @@ public class Instance {
         }
 
         // Generate an instance name that will be send as a tag with the metrics
+        this.instanceName = getInstanceName(this.instanceMap, this.checkName);
         if (this.instanceName == null) {
-            if (this.instanceMap.get(PROCESS_NAME_REGEX) != null) {
-                this.instanceName = this.checkName + "-" + this.instanceMap.get(PROCESS_NAME_REGEX);
-            } else if (this.instanceMap.get("host") != null) {
-                this.instanceName =
-                        this.checkName
-                                + "-"
-                                + this.instanceMap.get("host")
-                                + "-"
-                                + this.instanceMap.get("port");
-            } else {
-                log.warn(
-                        "Cannot determine a unique instance name. "
-                                + "Please define a name in your instance configuration");
-                this.instanceName = this.checkName;
-            }
+            log.warn(
+                    "Cannot determine a unique instance name. "
+                            + "Please define a name in your instance configuration");
+            this.instanceName = this.checkName;
         }
 
         if (initConfig != null) {
@@ -200,6 +254,87 @@ public class Instance {
             this.useCanonicalBeanName = false;
         }
 
+        // Fetch all the matching attributes of a bean with a single getAttributes call
+        this.bulkAttributeFetch = (Boolean) instanceMap.get("bulk_attribute_fetch");
+        if (this.bulkAttributeFetch == null && initConfig != null) {
+            this.bulkAttributeFetch = (Boolean) initConfig.get("bulk_attribute_fetch");
+        }
+        if (this.bulkAttributeFetch == null) {
+            this.bulkAttributeFetch = false;
+        }
+
+        // Follow bean registrations between two refreshes of the bean list
+        this.incrementalBeanRefresh = (Boolean) instanceMap.get("incremental_bean_refresh");
+        if (this.incrementalBeanRefresh == null && initConfig != null) {
+            this.incrementalBeanRefresh = (Boolean) initConfig.get("incremental_bean_refresh");
+        }
+        if (this.incrementalBeanRefresh == null) {
+            this.incrementalBeanRefresh = false;
+        }
+
+        // Introspect beans sharing the same class and name structure only once
+        this.cacheMBeanInfo = (Boolean) instanceMap.get("cache_mbean_info");
+        if (this.cacheMBeanInfo == null && initConfig != null) {
+            this.cacheMBeanInfo = (Boolean) initConfig.get("cache_mbean_info");
+        }
+        if (this.cacheMBeanInfo == null) {
+            this.cacheMBeanInfo = false;
+        }
+
+        // Stop reading attributes ahead of the collection timeout and report what was read
+        this.partialCollection = (Boolean) instanceMap.get("partial_collection");
+        if (this.partialCollection == null && initConfig != null) {
+            this.partialCollection = (Boolean) initConfig.get("partial_collection");
+        }
+        if (this.partialCollection == null) {
+            this.partialCollection = false;
+        }
+
+        // Read attributes slower than this many milliseconds less often
+        this.slowAttributeThreshold = (Integer) instanceMap.get("slow_attribute_threshold");
+        if (this.slowAttributeThreshold == null && initConfig != null) {
+            this.slowAttributeThreshold = (Integer) initConfig.get("slow_attribute_threshold");
+        }
+
+        // Introspect the beans of the instance on several threads when refreshing the bean list
+        this.beanDiscoveryThreads = (Integer) instanceMap.get("bean_discovery_threads");
+        if (this.beanDiscoveryThreads == null && initConfig != null) {
+            this.beanDiscoveryThreads = (Integer) initConfig.get("bean_discovery_threads");
+        }
+
+        // Reconnect a broken instance without discarding it
+        this.reconnectInPlace = (Boolean) instanceMap.get("reconnect_in_place");
+        if (this.reconnectInPlace == null && initConfig != null) {
+            this.reconnectInPlace = (Boolean) initConfig.get("reconnect_in_place");
+        }
+        if (this.reconnectInPlace == null) {
+            this.reconnectInPlace = false;
+        }
+
+        // Only report gauges when their value changes, or once per heartbeat (in seconds)
+        this.sendOnChange = (Boolean) instanceMap.get("send_on_change");
+        if (this.sendOnChange == null && initConfig != null) {
+            this.sendOnChange = (Boolean) initConfig.get("send_on_change");
+        }
+        if (this.sendOnChange == null) {
+            this.sendOnChange = false;
+        }
+        this.sendOnChangeHeartbeat = (Integer) instanceMap.get("send_on_change_heartbeat");
+        if (this.sendOnChangeHeartbeat == null && initConfig != null) {
+            this.sendOnChangeHeartbeat = (Integer) initConfig.get("send_on_change_heartbeat");
+        }
+        if (this.sendOnChangeHeartbeat == null) {
+            this.sendOnChangeHeartbeat = DEFAULT_SEND_ON_CHANGE_HEARTBEAT;
+        }
+
+        // Keep the matching plan across reconnections so that beans are not introspected again
+        this.reuseInitState = (Boolean) instanceMap.get("reuse_init_state");
+        if (this.reuseInitState == null && initConfig != null) {
+            this.reuseInitState = (Boolean) initConfig.get("reuse_init_state");
+        }
+        if (this.reuseInitState == null) {
+            this.reuseInitState = false;
+        }
 
         // Alternative aliasing for CASSANDRA-4009 metrics
         // More information: https://issues.apache.org/jira/browse/CASSANDRA-4009
@@ -212,40 +347,50 @@ public class Instance {
             }
         }
 
-        // In case the configuration to match beans is not specified in the "instance" parameter but
-        // in the initConfig one
-        Object instanceConf = this.instanceMap.get("conf");
-        if (instanceConf == null && this.initConfig != null) {
-            instanceConf = this.initConfig.get("conf");
-        }
-
-        if (instanceConf == null) {
-            log.warn("Cannot find a \"conf\" section in " + this.instanceName);
+        if (this.reuseInitState && previous != null && previous.reuseInitState) {
+            log.info("Reusing the initialization state of the previous instance {}", previous);
+            this.configurationList = previous.configurationList;
+            this.configurationMatcher = previous.configurationMatcher;
+            this.beanScopes = previous.beanScopes;
+            this.beanInfos = previous.beanInfos;
         } else {
-            for (Map<String, Object> conf :
-                    (List<Map<String, Object>>) (instanceConf)) {
-                configurationList.add(new Configuration(conf));
+            // In case the configuration to match beans is not specified in the "instance"
+            // parameter but in the initConfig one
+            Object instanceConf = this.instanceMap.get("conf");
+            if (instanceConf == null && this.initConfig != null) {
+                instanceConf = this.initConfig.get("conf");
+            }
+
+            if (instanceConf == null) {
+                log.warn("Cannot find a \"conf\" section in " + this.instanceName);
+            } else {
+                for (Map<String, Object> conf :
+                        (List<Map<String, Object>>) (instanceConf)) {
+                    configurationList.add(new Configuration(conf));
+                }
             }
-        }
 
-        loadMetricConfigFiles(appConfig, configurationList);
-        loadMetricConfigResources(appConfig, configurationList);
+            loadMetricConfigFiles(appConfig, configurationList);
+            loadMetricConfigResources(appConfig, configurationList);
 
-        String gcMetricConfig = "old-gc-default-jmx-metrics.yaml";
+            String gcMetricConfig = "old-gc-default-jmx-metrics.yaml";
 
-        if (this.initConfig != null) {
-            Boolean newGcMetrics = (Boolean) this.initConfig.get("new_gc_metrics");
-            if (newGcMetrics != null && newGcMetrics) {
-                gcMetricConfig = "new-gc-default-jmx-metrics.yaml";
+            if (this.initConfig != null) {
+                Boolean newGcMetrics = (Boolean) this.initConfig.get("new_gc_metrics");
+                if (newGcMetrics != null && newGcMetrics) {
+                    gcMetricConfig = "new-gc-default-jmx-metrics.yaml";
+                }
             }
-        }
 
-        Boolean collectDefaultJvmMetrics = (Boolean) instanceMap.get("collect_default_jvm_metrics");
-        if (collectDefaultJvmMetrics == null || collectDefaultJvmMetrics) {
-            loadDefaultConfig("default-jmx-metrics.yaml");
-            loadDefaultConfig(gcMetricConfig);
-        } else {
-            log.info("collect_default_jvm_metrics is false - not collecting default JVM metrics");
+            Boolean collectDefaultJvmMetrics =
+                    (Boolean) instanceMap.get("collect_default_jvm_metrics");
+            if (collectDefaultJvmMetrics == null || collectDefaultJvmMetrics) {
+                loadDefaultConfig("default-jmx-metrics.yaml");
+                loadDefaultConfig(gcMetricConfig);
+            } else {
+                log.info("collect_default_jvm_metrics is false - "
+                        + "not collecting default JVM metrics");
+            }
         }
 
         instanceTelemetryBean = new InstanceTelemetry();
@@ -288,6 +433,21 @@ public class Instance {
     }
 
 
+    /**
+     * Returns the name of the instance built from the given configuration, or null if it cannot
+     * be determined.
+     */
+    static String getInstanceName(Map<String, Object> instanceMap, String checkName) {
+        if (instanceMap.get("name") != null) {
+            return (String) instanceMap.get("name");
+        } else if (instanceMap.get(PROCESS_NAME_REGEX) != null) {
+            return checkName + "-" + instanceMap.get(PROCESS_NAME_REGEX);
+        } else if (instanceMap.get("host") != null) {
+            return checkName + "-" + instanceMap.get("host") + "-" + instanceMap.get("port");
+        }
+        return null;
+    }
+
     public static boolean isDirectInstance(Map<String, Object> configInstance) {
         Object directInstance = configInstance.get(JVM_DIRECT);
         return directInstance instanceof Boolean && (Boolean) directInstance;
@@ -433,16 +593,46 @@ public class Instance {
         } else if (forceNewConnection) {
             log.info("Forcing a new connection, attempting to create...");
             connection.closeConnector();
-            return appConfig.getConnectionFactory().createConnection(connectionParams);
+            ConnectionFactory connectionFactory = appConfig.getConnectionFactory();
+            if (connectionFactory instanceof SharedConnectionFactory) {
+                // Other instances may still share the connection being replaced
+                return ((SharedConnectionFactory) connectionFactory)
+                        .createNewConnection(connectionParams);
+            }
+            return connectionFactory.createConnection(connectionParams);
         }
         return connection;
     }
 
-    /** Initializes the instance. May force a new connection.. */
+    /**
+     * Initializes the instance. May force a new connection.. Fails if a previous collection of
+     * the instance, which timed out, is still running, as it would keep using the state being
+     * initialized again.
+     */
     public void init(boolean forceNewConnection)
             throws IOException, FailedLoginException, SecurityException {
+        if (!this.collectionLock.tryLock()) {
+            throw new IOException("A previous collection of " + this + " is still running");
+        }
+        try {
+            doInit(forceNewConnection);
+        } finally {
+            this.collectionLock.unlock();
+        }
+    }
+
+    private void doInit(boolean forceNewConnection)
+            throws IOException, FailedLoginException, SecurityException {
         log.info("Trying to connect to JMX Server at " + this.toString());
+        // When reconnecting in place, the beans matched before may be matched again as is
+        Set<ObjectName> previousBeans =
+                forceNewConnection && this.reconnectInPlace ? this.matchedBeans : null;
+        unsubscribeBeanRegistrations();
         connection = getConnection(instanceMap, forceNewConnection);
+        if (this.incrementalBeanRefresh) {
+            // Subscribe first so that no bean registered during the query is missed
+            subscribeBeanRegistrations();
+        }
 
         log.info(
                 "Trying to collect bean list for the first time for JMX Server at {}", this);
@@ -450,11 +640,27 @@ public class Instance {
         this.initialRefreshTime = this.lastRefreshTime;
         log.info("Connected to JMX Server at {} with {} beans", this, this.beans.size());
 
+        if (previousBeans != null && previousBeans.equals(this.beans)) {
+            for (JmxAttribute jmxAttribute : this.matchingAttributes) {
+                jmxAttribute.setConnection(connection);
+            }
+            this.matchedBeans = this.beans;
+            log.info("Bean list unchanged, keeping the {} matching attributes of {}",
+                    this.matchingAttributes.size(), this);
+            return;
+        }
+
         // Resolve configuration-level dynamic tags for all configurations
         // Must be done after refreshBeansList() so the beans exist
         resolveConfigurationDynamicTags();
 
-        this.getMatchingAttributes();
+        // Beans still registered since the last match do not need to be introspected again
+        this.previousBeanInfos = this.beanInfos;
+        try {
+            this.getMatchingAttributes();
+        } finally {
+            this.previousBeanInfos = null;
+        }
         log.info("Done initializing JMX Server at {}", this);
     }
 
@@ -525,6 +731,29 @@ public class Instance {
         return resolvedTags;
     }
 
+    /** Returns whether or not the instance reconnects without being rebuilt when broken. */
+    public boolean isReconnectInPlace() {
+        return this.reconnectInPlace;
+    }
+
+    /**
+     * Returns the interval in milliseconds at which unchanged gauges are reported anyway, or 0 if
+     * gauges are reported on every collection.
+     */
+    public long getSendOnChangeHeartbeat() {
+        return this.sendOnChange ? this.sendOnChangeHeartbeat * 1000L : 0;
+    }
+
+    /** Returns whether or not the instance was built from the given configuration. */
+    boolean hasConfiguration(
+            String checkName, Map<String, Object> instanceMap, Map<String, Object> initConfig) {
+        return this.checkName.equals(checkName)
+                && this.instanceMap.equals(instanceMap)
+                && (this.initConfig == null
+                        ? initConfig == null
+                        : this.initConfig.equals(initConfig));
+    }
+
     /** Returns a string representation for the instance. */
     @Override
     public String toString() {
@@ -545,8 +774,41 @@ public class Instance {
         }
     }
 
-    /** Returns a map of metrics collected. */
+    /**
+     * Returns the metrics collected. The list and its metrics are reused by the next collection,
+     * so they must be consumed before then.
+     */
     public List<Metric> getMetrics() throws IOException {
+        return getMetrics(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the metrics collected by a collection submitted at the given time. The deadline of
+     * a partial collection is counted from then, as the collection timeout is, so that the time
+     * spent waiting for a collection thread is not left out of it.
+     */
+    public List<Metric> getMetrics(long submitTime) throws IOException {
+        this.collectionLock.lock();
+        try {
+            return collectMetrics(submitTime);
+        } finally {
+            this.collectionLock.unlock();
+        }
+    }
+
+    /**
+     * Holds the collection lock of the instance until unlocked, for metrics to be reported
+     * before the instance may be initialized again.
+     */
+    void lockCollection() {
+        this.collectionLock.lock();
+    }
+
+    void unlockCollection() {
+        this.collectionLock.unlock();
+    }
+
+    private List<Metric> collectMetrics(long submitTime) throws IOException {
 
         // In case of ephemeral beans, we can force to refresh the bean list x seconds
         // post initialization and every x seconds thereafter.
@@ -560,49 +822,307 @@ public class Instance {
             this.refreshBeansList();
             this.getMatchingAttributes();
         }
+        applyBeanRegistrations();
 
-        List<Metric> metrics = new ArrayList<Metric>();
-        Iterator<JmxAttribute> it = matchingAttributes.iterator();
+        // The list is reused from one collection to the next
+        metrics.clear();
+        Set<ObjectName> prefetchedBeans = null;
+        if (this.bulkAttributeFetch) {
+            prefetchedBeans = new HashSet<ObjectName>();
+        }
 
         // increment the lastCollectionTime
         this.lastCollectionTime = System.currentTimeMillis();
 
-        while (it.hasNext()) {
-            JmxAttribute jmxAttr = it.next();
-            try {
-                List<Metric> jmxAttrMetrics = jmxAttr.getMetrics();
-                metrics.addAll(jmxAttrMetrics);
-                this.failingAttributes.remove(jmxAttr);
-            } catch (IOException e) {
-                throw e;
-            } catch (Exception e) {
-                log.debug("Cannot get metrics for attribute: " + jmxAttr, e);
-                if (this.failingAttributes.contains(jmxAttr)) {
-                    log.debug(
-                            "Cannot generate metrics for attribute: "
-                                    + jmxAttr
-                                    + " twice in a row. Removing it from the attribute list");
-                    it.remove();
-                } else {
-                    this.failingAttributes.add(jmxAttr);
+        long deadline = Long.MAX_VALUE;
+        if (this.partialCollection) {
+            deadline = submitTime
+                    + (long) (TimeUnit.SECONDS.toMillis(appConfig.getCollectionTimeout())
+                            * PARTIAL_COLLECTION_DEADLINE_RATIO);
+        }
+
+        // A partial collection resumes from the first attribute it did not reach
+        int attributeCount = matchingAttributes.size();
+        int first = this.collectionResumeIndex < attributeCount ? this.collectionResumeIndex : 0;
+        int collected = 0;
+        List<JmxAttribute> removedAttributes = null;
+        boolean telemetry = appConfig.getJmxfetchTelemetry();
+        boolean trackLatency = this.slowAttributeThreshold != null || telemetry;
+        long[] latencyHistogram = null;
+        long maxLatencyMs = 0;
+        if (telemetry) {
+            latencyHistogram =
+                    new long[InstanceTelemetry.ATTRIBUTE_LATENCY_BOUNDS_MS.length + 1];
+        }
+        try {
+            for (; collected < attributeCount; collected++) {
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                JmxAttribute jmxAttr = matchingAttributes.get((first + collected) % attributeCount);
+                if (this.slowAttributeThreshold != null && !jmxAttr.isCollectionDue()) {
+                    jmxAttr.skipCollection();
+                    continue;
+                }
+                long readStart = trackLatency ? System.nanoTime() : 0;
+                try {
+                    if (prefetchedBeans != null && prefetchedBeans.add(jmxAttr.getBeanName())) {
+                        prefetchBeanAttributes(jmxAttr.getBeanName());
+                        // The bulk fetch is for the whole bean, not for its first attribute
+                        if (trackLatency) {
+                            readStart = System.nanoTime();
+                        }
+                    }
+                    List<Metric> jmxAttrMetrics = jmxAttr.getMetrics();
+                    metrics.addAll(jmxAttrMetrics);
+                    this.failingAttributes.remove(jmxAttr);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.debug("Cannot get metrics for attribute: " + jmxAttr, e);
+                    if (this.failingAttributes.contains(jmxAttr)) {
+                        log.debug(
+                                "Cannot generate metrics for attribute: "
+                                        + jmxAttr
+                                        + " twice in a row. Removing it from the attribute list");
+                        if (removedAttributes == null) {
+                            removedAttributes = new ArrayList<JmxAttribute>();
+                        }
+                        removedAttributes.add(jmxAttr);
+                    } else {
+                        this.failingAttributes.add(jmxAttr);
+                    }
+                }
+                if (trackLatency) {
+                    long latencyMs =
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readStart);
+                    if (this.slowAttributeThreshold != null) {
+                        jmxAttr.recordReadLatency(latencyMs, this.slowAttributeThreshold);
+                    }
+                    if (latencyHistogram != null) {
+                        latencyHistogram[
+                                InstanceTelemetry.getAttributeLatencyBucket(latencyMs)]++;
+                    }
+                    maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
                 }
             }
+        } finally {
+            if (prefetchedBeans != null) {
+                // Values are only valid for the current collection
+                for (JmxAttribute jmxAttr : matchingAttributes) {
+                    jmxAttr.clearPrefetchedValue();
+                }
+            }
+        }
+
+        this.partialCollectionReached = collected < attributeCount;
+        JmxAttribute resumeAttribute = this.partialCollectionReached
+                ? matchingAttributes.get((first + collected) % attributeCount) : null;
+        if (removedAttributes != null) {
+            for (JmxAttribute jmxAttr : removedAttributes) {
+                matchingAttributes.remove(jmxAttr);
+                removeMatchingAttributeByBean(jmxAttr);
+            }
+        }
+        this.collectionResumeIndex =
+                resumeAttribute != null ? matchingAttributes.indexOf(resumeAttribute) : 0;
+        if (this.partialCollectionReached) {
+            log.debug("Collection of instance {} stopped at the deadline after {} of {} attributes",
+                    this, collected, attributeCount);
         }
         if (instanceTelemetryBean != null) {
             instanceTelemetryBean.setBeansFetched(beans.size());
             instanceTelemetryBean.setTopLevelAttributeCount(matchingAttributes.size());
             instanceTelemetryBean.setMetricCount(metrics.size());
+            if (latencyHistogram != null) {
+                instanceTelemetryBean.setAttributeLatencyHistogram(latencyHistogram);
+            }
+            instanceTelemetryBean.setMaxAttributeLatencyMs(maxLatencyMs);
+            instanceTelemetryBean.setSlowAttributeCount(getSlowAttributeCount());
             log.debug("Updated jmx bean for instance: " + this.getCheckName()
                     + " With beans fetched = " + instanceTelemetryBean.getBeansFetched()
                     + " top attributes = " + instanceTelemetryBean.getTopLevelAttributeCount()
                     + " metrics = " + instanceTelemetryBean.getMetricCount()
                     + " wildcard domain query count = "
                     + instanceTelemetryBean.getWildcardDomainQueryCount()
-                    + " bean match ratio = " + instanceTelemetryBean.getBeanMatchRatio());
+                    + " bean match ratio = " + instanceTelemetryBean.getBeanMatchRatio()
+                    + " max attribute latency ms = "
+                    + instanceTelemetryBean.getMaxAttributeLatencyMs()
+                    + " slow attribute count = " + instanceTelemetryBean.getSlowAttributeCount());
         }
         return metrics;
     }
 
+    /**
+     * Fetches the values of all the matching attributes of a bean with a single call and hands
+     * each attribute its value for the current collection. Attributes left without a value are
+     * fetched one by one, so that a failing attribute still reports its own error.
+     */
+    private void prefetchBeanAttributes(ObjectName beanName) throws IOException {
+        List<JmxAttribute> beanAttributes = this.matchingAttributesByBean.get(beanName);
+        if (beanAttributes == null || beanAttributes.size() < 2) {
+            return;
+        }
+
+        // Demoted attributes are left out of the collections they are not due
+        List<String> names = new ArrayList<String>(beanAttributes.size());
+        for (JmxAttribute jmxAttr : beanAttributes) {
+            if (this.slowAttributeThreshold == null || jmxAttr.isCollectionDue()) {
+                names.add(jmxAttr.getAttributeName());
+            }
+        }
+        if (names.size() < 2) {
+            return;
+        }
+        String[] attributeNames = names.toArray(new String[names.size()]);
+
+        Map<String, Object> values;
+        try {
+            values = connection.getAttributes(beanName, attributeNames);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            log.debug("Cannot fetch attributes in bulk for bean: " + beanName, e);
+            return;
+        }
+
+        for (JmxAttribute jmxAttr : beanAttributes) {
+            if (values.containsKey(jmxAttr.getAttributeName())) {
+                jmxAttr.setPrefetchedValue(values.get(jmxAttr.getAttributeName()));
+            }
+        }
+    }
+
+    private int getSlowAttributeCount() {
+        if (this.slowAttributeThreshold == null) {
+            return 0;
+        }
+        int count = 0;
+        for (JmxAttribute jmxAttr : matchingAttributes) {
+            if (jmxAttr.isDemoted()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void addMatchingAttributeByBean(JmxAttribute jmxAttribute) {
+        List<JmxAttribute> beanAttributes =
+                this.matchingAttributesByBean.get(jmxAttribute.getBeanName());
+        if (beanAttributes == null) {
+            beanAttributes = new ArrayList<JmxAttribute>();
+            this.matchingAttributesByBean.put(jmxAttribute.getBeanName(), beanAttributes);
+        }
+        beanAttributes.add(jmxAttribute);
+    }
+
+    private void removeMatchingAttributeByBean(JmxAttribute jmxAttribute) {
+        List<JmxAttribute> beanAttributes =
+                this.matchingAttributesByBean.get(jmxAttribute.getBeanName());
+        if (beanAttributes != null) {
+            beanAttributes.remove(jmxAttribute);
+            if (beanAttributes.isEmpty()) {
+                this.matchingAttributesByBean.remove(jmxAttribute.getBeanName());
+            }
+        }
+    }
+
+    private void subscribeBeanRegistrations() {
+        BeanRegistrationListener listener = new BeanRegistrationListener();
+        MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+        filter.enableAllObjectNames();
+        try {
+            connection.addNotificationListener(
+                    MBeanServerDelegate.DELEGATE_NAME, listener, filter);
+            this.beanRegistrationListener = listener;
+        } catch (Exception e) {
+            log.warn("Unable to subscribe to bean registrations for {}, new beans will only be "
+                    + "discovered when refreshing the bean list", this, e);
+        }
+    }
+
+    private void unsubscribeBeanRegistrations() {
+        removeBeanRegistrationListener(connection, this.beanRegistrationListener);
+        this.beanRegistrationListener = null;
+    }
+
+    /** Removes the listener from the connection, which makes remote calls when it is alive. */
+    private void removeBeanRegistrationListener(
+            Connection conn, BeanRegistrationListener listener) {
+        if (conn == null || listener == null || !conn.isAlive()) {
+            return;
+        }
+        try {
+            conn.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
+        } catch (Exception e) {
+            log.debug("Unable to unsubscribe from bean registrations for {}", this, e);
+        }
+    }
+
+    /**
+     * Applies the bean registrations notified since the last collection: attributes of
+     * unregistered beans are dropped and only the newly registered beans are matched.
+     */
+    private void applyBeanRegistrations() throws IOException {
+        if (this.beanRegistrationListener == null) {
+            return;
+        }
+        Map<ObjectName, Boolean> changes = this.beanRegistrationListener.drainChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<ObjectName> registeredBeans = new ArrayList<ObjectName>();
+        for (Entry<ObjectName, Boolean> change : changes.entrySet()) {
+            ObjectName beanName = change.getKey();
+            // A bean registered again may expose different attributes
+            removeBeanAttributes(beanName);
+            if (change.getValue() && isInBeanScopes(beanName)) {
+                this.beans.add(beanName);
+                registeredBeans.add(beanName);
+            } else {
+                this.beans.remove(beanName);
+                this.beanClassNames.remove(beanName);
+                if (this.beanInfos != null) {
+                    this.beanInfos.remove(beanName);
+                }
+            }
+        }
+        log.debug("Matching {} newly registered beans for {}", registeredBeans.size(), this);
+        matchBeanAttributes(registeredBeans);
+        updateBeanMatchRatio();
+    }
+
+    private void removeBeanAttributes(ObjectName beanName) {
+        List<JmxAttribute> beanAttributes = this.matchingAttributesByBean.remove(beanName);
+        if (beanAttributes == null) {
+            return;
+        }
+        Set<JmxAttribute> removed = new HashSet<JmxAttribute>(beanAttributes);
+        this.matchingAttributes.removeAll(removed);
+        this.failingAttributes.removeAll(removed);
+        for (JmxAttribute jmxAttribute : beanAttributes) {
+            this.metricsCount -= jmxAttribute.getMetricsCount();
+        }
+    }
+
+    private boolean isInBeanScopes(ObjectName beanName) {
+        List<String> beanScopes = getBeansScopes();
+        if (beanScopes.isEmpty()) {
+            return true;
+        }
+        for (String scope : beanScopes) {
+            try {
+                if (new ObjectName(scope).apply(beanName)) {
+                    return true;
+                }
+            } catch (MalformedObjectNameException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Returns whether or not the given period has elapsed since reference time. */
     public boolean isPeriodDue(long refTime, Integer refPeriod) {
         if ((System.currentTimeMillis() - refTime) / 1000 < refPeriod) {
@@ -612,6 +1132,17 @@ public class Instance {
         }
     }
 
+    /**
+     * Returns the period between two collections of the instance in milliseconds, given the
+     * global check period.
+     */
+    public long getCollectionPeriod(long checkPeriod) {
+        if (this.minCollectionPeriod == null) {
+            return checkPeriod;
+        }
+        return Math.max(checkPeriod, this.minCollectionPeriod * 1000L);
+    }
+
     /** Returns whether or not its time to collect metrics for the instance. */
     public boolean timeToCollect() {
         if (this.minCollectionPeriod == null) {
@@ -622,23 +1153,52 @@ public class Instance {
     }
 
     private void getMatchingAttributes() throws IOException {
+        this.matchedBeans = null;
+        this.matchingAttributesByBean.clear();
         limitReached = false;
-        Reporter reporter = appConfig.getReporter();
-        String action = appConfig.getAction();
-        boolean metricReachedDisplayed = false;
-
         this.matchingAttributes.clear();
+        this.collectionResumeIndex = 0;
         this.failingAttributes.clear();
-        int metricsCount = 0;
+        this.metricsCount = 0;
+
+        if (!appConfig.getAction().equals(AppConfig.ACTION_COLLECT)) {
+            appConfig.getReporter().displayInstanceName(this);
+        }
+        if (this.reuseInitState) {
+            // Beans not registered anymore are forgotten
+            this.beanInfos = new HashMap<ObjectName, MBeanInfo>();
+        }
 
-        int beansWithAttributeMatch = 0;
+        if (this.beanDiscoveryThreads != null) {
+            this.discoveredBeanInfos = discoverBeanInfos(this.beans);
+        }
+        try {
+            matchBeanAttributes(this.beans);
+        } finally {
+            this.discoveredBeanInfos = null;
+        }
+        updateBeanMatchRatio();
+        this.matchedBeans = this.beans;
+        log.info("Found {} matching attributes", matchingAttributes.size());
+    }
+
+    private void updateBeanMatchRatio() {
+        if (instanceTelemetryBean != null) {
+            instanceTelemetryBean.setBeanMatchRatio((double)
+                                  matchingAttributesByBean.size() / beans.size());
+        }
+    }
 
-        if (!action.equals(AppConfig.ACTION_COLLECT)) {
-            reporter.displayInstanceName(this);
+    /** Matches the attributes of the given beans against the configurations. */
+    private void matchBeanAttributes(Collection<ObjectName> beanNames) throws IOException {
+        Reporter reporter = appConfig.getReporter();
+        String action = appConfig.getAction();
+        boolean metricReachedDisplayed = false;
+        if (this.configurationMatcher == null) {
+            this.configurationMatcher = new ConfigurationMatcher(configurationList);
         }
 
-        for (ObjectName beanName : this.beans) {
-            boolean attributeMatched = false;
+        for (ObjectName beanName : beanNames) {
             if (limitReached) {
                 log.debug("Limit reached");
                 if (action.equals(AppConfig.ACTION_COLLECT)) {
@@ -647,15 +1207,18 @@ public class Instance {
             }
             String className;
             MBeanAttributeInfo[] attributeInfos;
+            List<Configuration> candidateConfigurations;
             String beanNameStr = beanName.getCanonicalName();
             try {
                 log.debug("Getting bean info for bean: {}", beanNameStr);
-                MBeanInfo info = connection.getMBeanInfo(beanName);
+                MBeanInfo info = getBeanInfo(beanName);
 
                 log.debug("Getting class name for bean: {}", beanNameStr);
                 className = info.getClassName();
                 log.debug("Getting attributes for bean: {}", beanNameStr);
                 attributeInfos = info.getAttributes();
+                candidateConfigurations =
+                        configurationMatcher.getCandidates(beanName.getDomain(), className);
             } catch (IOException e) {
                 // we should not continue
                 throw e;
@@ -756,11 +1319,11 @@ public class Instance {
                     continue;
                 }
 
-                // For each attribute we try it with each configuration to see if there is one that
-                // matches
+                // For each attribute we try it with each configuration that may apply to the bean
+                // to see if there is one that matches
                 // If so, we store the attribute so metrics will be collected from it. Otherwise we
                 // discard it.
-                for (Configuration conf : configurationList) {
+                for (Configuration conf : candidateConfigurations) {
                     try {
                         if (jmxAttribute.match(conf)) {
                             Map<String, String> resolvedDynamicTags =
@@ -769,6 +1332,7 @@ public class Instance {
                             jmxAttribute.setMatchingConf(conf);
                             metricsCount += jmxAttribute.getMetricsCount();
                             this.matchingAttributes.add(jmxAttribute);
+                            addMatchingAttributeByBean(jmxAttribute);
 
                             if (action.equals(AppConfig.ACTION_LIST_EVERYTHING)
                                     || action.equals(AppConfig.ACTION_LIST_MATCHING)
@@ -796,19 +1360,144 @@ public class Instance {
                             || action.equals(AppConfig.ACTION_LIST_NOT_MATCHING))) {
                     reporter.displayNonMatchingAttributeName(jmxAttribute);
                 }
-                if (jmxAttribute.getMatchingConf() != null) {
-                    attributeMatched = true;
-                }
             }
-            if (attributeMatched) {
-                beansWithAttributeMatch += 1;
+        }
+    }
+
+    /**
+     * Returns the info of a bean, reusing the info known from the previous match while
+     * initializing, unless the bean is now of another class or its info may change.
+     */
+    private MBeanInfo getBeanInfo(ObjectName beanName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                    IOException {
+        MBeanInfo info = getPreviousBeanInfo(beanName);
+        if (info == null && this.discoveredBeanInfos != null) {
+            info = this.discoveredBeanInfos.get(beanName);
+        }
+        if (info == null) {
+            info = fetchBeanInfo(beanName);
+        }
+        if (this.beanInfos != null) {
+            this.beanInfos.put(beanName, info);
+        }
+        return info;
+    }
+
+    private MBeanInfo getPreviousBeanInfo(ObjectName beanName) {
+        if (this.previousBeanInfos == null) {
+            return null;
+        }
+        MBeanInfo info = this.previousBeanInfos.get(beanName);
+        String className = beanClassNames.get(beanName);
+        if (info == null || className == null || !className.equals(info.getClassName())) {
+            return null;
+        }
+        // Dynamic MBeans may expose other attributes under the same class
+        return MBeanInfoCache.isImmutable(info) ? info : null;
+    }
+
+    private MBeanInfo fetchBeanInfo(ObjectName beanName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                    IOException {
+        return this.cacheMBeanInfo
+                ? connection.getMBeanInfo(beanName, beanClassNames.get(beanName))
+                : connection.getMBeanInfo(beanName);
+    }
+
+    /**
+     * Fetches the info of the beans to introspect on several threads, each one in charge of
+     * every n-th bean. The beans are still matched one after the other afterwards, so the
+     * metric limit applies the same way, though beans past the limit may have been introspected.
+     * Beans whose info cannot be fetched are left to the match, which reports them.
+     */
+    private Map<ObjectName, MBeanInfo> discoverBeanInfos(Collection<ObjectName> beanNames)
+            throws IOException {
+        final List<ObjectName> pending = new ArrayList<ObjectName>();
+        for (ObjectName beanName : beanNames) {
+            if (getPreviousBeanInfo(beanName) == null) {
+                pending.add(beanName);
             }
         }
-        if (instanceTelemetryBean != null) {
-            instanceTelemetryBean.setBeanMatchRatio((double)
-                                  beansWithAttributeMatch / beans.size());
+        final int threads = Math.min(this.beanDiscoveryThreads, pending.size());
+        if (threads <= 1) {
+            return null;
+        }
+
+        log.debug("Introspecting {} beans of {} on {} threads", pending.size(), this, threads);
+        final Map<ObjectName, MBeanInfo> infos = new ConcurrentHashMap<ObjectName, MBeanInfo>();
+        ExecutorService executor = getBeanDiscoveryExecutor();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int first = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int j = first; j < pending.size(); j += threads) {
+                            ObjectName beanName = pending.get(j);
+                            try {
+                                infos.put(beanName, fetchBeanInfo(beanName));
+                            } catch (IOException e) {
+                                throw e;
+                            } catch (Exception e) {
+                                log.debug("Cannot get bean info for bean {}", beanName, e);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while introspecting beans");
+        } finally {
+            // Left over when a thread failed or the match was interrupted
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Returns the pool introspecting the beans of the instance, created on first use and kept
+     * until the instance is cleaned up. Its threads stop once idle between matches.
+     */
+    private synchronized ExecutorService getBeanDiscoveryExecutor() {
+        if (this.beanDiscoveryExecutor == null) {
+            this.beanDiscoveryExecutor = new ThreadPoolExecutor(
+                    this.beanDiscoveryThreads, this.beanDiscoveryThreads,
+                    BEAN_DISCOVERY_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger counter = new AtomicInteger(0);
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "jmxfetch-discovery-"
+                                    + instanceName + "-" + counter.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            this.beanDiscoveryExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.beanDiscoveryExecutor;
+    }
+
+    private synchronized void shutdownBeanDiscoveryExecutor() {
+        if (this.beanDiscoveryExecutor != null) {
+            this.beanDiscoveryExecutor.shutdownNow();
+            this.beanDiscoveryExecutor = null;
         }
-        log.info("Found {} matching attributes", matchingAttributes.size());
     }
 
     /** Returns a list of strings listing the bean scopes. */
@@ -825,6 +1514,7 @@ public class Instance {
      */
     private void refreshBeansList() throws IOException {
         this.beans = new HashSet<ObjectName>();
+        this.beanClassNames.clear();
         String action = appConfig.getAction();
         boolean limitQueryScopes =
                 !action.equals(AppConfig.ACTION_LIST_EVERYTHING)
@@ -835,7 +1525,7 @@ public class Instance {
                 List<String> beanScopes = getBeansScopes();
                 for (String scope : beanScopes) {
                     ObjectName name = new ObjectName(scope);
-                    this.beans.addAll(connection.queryNames(name));
+                    this.beans.addAll(queryBeans(name));
                 }
             } catch (MalformedObjectNameException e) {
                 log.error("Unable to create ObjectName", e);
@@ -846,7 +1536,7 @@ public class Instance {
         }
 
         if (this.beans.isEmpty()) {
-            this.beans = connection.queryNames(null);
+            this.beans = queryBeans(null);
             if (instanceTelemetryBean != null) {
                 int wildcardQueryCount = instanceTelemetryBean.getWildcardDomainQueryCount();
                 instanceTelemetryBean.setWildcardDomainQueryCount(wildcardQueryCount + 1);
@@ -855,6 +1545,23 @@ public class Instance {
         this.lastRefreshTime = System.currentTimeMillis();
     }
 
+    /**
+     * Queries the names of the beans in a scope. When caching or reusing bean info, their class
+     * names are also recorded, so that beans of an already introspected class need no call of
+     * their own, and so that the info of a bean is not reused once it is of another class.
+     */
+    private Set<ObjectName> queryBeans(ObjectName scope) throws IOException {
+        if (!this.cacheMBeanInfo && !this.reuseInitState) {
+            return connection.queryNames(scope);
+        }
+        Set<ObjectName> beanNames = new HashSet<ObjectName>();
+        for (ObjectInstance bean : connection.queryMBeans(scope)) {
+            beanNames.add(bean.getObjectName());
+            this.beanClassNames.put(bean.getObjectName(), bean.getClassName());
+        }
+        return beanNames;
+    }
+
     /** Returns a string array listing the service check tags. */
     public String[] getServiceCheckTags() {
         List<String> tags = new ArrayList<String>();
@@ -923,6 +1630,14 @@ public class Instance {
         return this.limitReached;
     }
 
+    /**
+     * Returns whether or not the last collection stopped at the partial collection deadline
+     * before reading all the matching attributes.
+     */
+    public boolean isPartialCollectionReached() {
+        return this.partialCollectionReached;
+    }
+
     private void cleanupTelemetryBean() {
         if (!appConfig.getJmxfetchTelemetry()) {
             // If telemetry is not enabled, no need to unregister the bean
@@ -939,6 +1654,8 @@ public class Instance {
     /** Clean up config and close connection. */
     public void cleanUp() {
         cleanupTelemetryBean();
+        unsubscribeBeanRegistrations();
+        shutdownBeanDiscoveryExecutor();
         if (connection != null) {
             connection.closeConnector();
             connection = null;
@@ -950,22 +1667,37 @@ public class Instance {
      * */
     public synchronized void cleanUpAsync() {
         cleanupTelemetryBean();
+        shutdownBeanDiscoveryExecutor();
+        disconnectAsync();
+    }
+
+    /**
+     * Asynchronous close of the connection, keeping the rest of the instance so that it can
+     * reconnect in place.
+     */
+    public synchronized void disconnectAsync() {
         class AsyncCleaner implements Runnable {
             Connection conn;
+            BeanRegistrationListener listener;
 
-            AsyncCleaner(Connection conn) {
+            AsyncCleaner(Connection conn, BeanRegistrationListener listener) {
                 this.conn = conn;
+                this.listener = listener;
             }
 
             @Override
             public void run() {
+                // Unsubscribing is remote, so it is done here rather than on the main loop
+                removeBeanRegistrationListener(conn, listener);
                 conn.closeConnector();
             }
         }
 
         if (connection != null) {
-            new Thread(new AsyncCleaner(connection), "jmx-closer").start();
+            new Thread(new AsyncCleaner(connection, this.beanRegistrationListener), "jmx-closer")
+                    .start();
             connection = null;
         }
+        this.beanRegistrationListener = null;
     }
 }
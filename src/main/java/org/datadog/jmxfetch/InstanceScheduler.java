@@ -0,0 +1,194 @@
+package org.datadog.jmxfetch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.datadog.jmxfetch.reporter.Reporter;
+import org.datadog.jmxfetch.tasks.TaskProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the collection of each instance independently. Every instance has its own next due
+ * time, its collection is submitted to the collection pool when it becomes due and handed back as
+ * soon as it completes, so a slow instance does not delay the others.
+ */
+@Slf4j
+class InstanceScheduler {
+    private final PriorityQueue<ScheduledInstance> queue = new PriorityQueue<ScheduledInstance>();
+    private final Map<Instance, ScheduledCollection> inFlight =
+            new IdentityHashMap<Instance, ScheduledCollection>();
+    private final BlockingQueue<ScheduledCollection> completed =
+            new LinkedBlockingQueue<ScheduledCollection>();
+
+    /**
+     * Schedules the instances not known yet to be collected right away, and forgets about the
+     * instances that are not part of the list anymore.
+     */
+    void sync(List<Instance> instances, long now) {
+        Set<Instance> known = Collections.newSetFromMap(new IdentityHashMap<Instance, Boolean>());
+        for (Iterator<ScheduledInstance> it = queue.iterator(); it.hasNext(); ) {
+            ScheduledInstance scheduled = it.next();
+            known.add(scheduled.instance);
+        }
+        known.addAll(inFlight.keySet());
+
+        Set<Instance> current = Collections.newSetFromMap(new IdentityHashMap<Instance, Boolean>());
+        current.addAll(instances);
+        for (Instance instance : instances) {
+            if (!known.contains(instance)) {
+                queue.add(new ScheduledInstance(instance, now));
+            }
+        }
+        for (Iterator<ScheduledInstance> it = queue.iterator(); it.hasNext(); ) {
+            if (!current.contains(it.next().instance)) {
+                it.remove();
+            }
+        }
+        for (Iterator<ScheduledCollection> it = inFlight.values().iterator(); it.hasNext(); ) {
+            ScheduledCollection collection = it.next();
+            if (!current.contains(collection.getInstance())) {
+                collection.cancel(true);
+                it.remove();
+            }
+        }
+    }
+
+    /** Cancels the ongoing collections and forgets about all the instances. */
+    void clear() {
+        for (ScheduledCollection collection : inFlight.values()) {
+            collection.cancel(true);
+        }
+        inFlight.clear();
+        queue.clear();
+        completed.clear();
+    }
+
+    /**
+     * Submits the collection of every instance due at the given time. Collections report their
+     * own metrics if given a reporter.
+     */
+    void submitDue(TaskProcessor processor, Reporter reporter, long now) {
+        while (!queue.isEmpty() && queue.peek().dueTime <= now) {
+            Instance instance = queue.poll().instance;
+            ScheduledCollection collection = new ScheduledCollection(instance, reporter, now);
+            inFlight.put(instance, collection);
+            processor.execute(collection);
+        }
+    }
+
+    /** Returns the earliest time at which an instance is due, or Long.MAX_VALUE if none is. */
+    long getNextDueTime() {
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.peek().dueTime;
+    }
+
+    /**
+     * Returns the earliest time at which an ongoing collection exceeds the timeout, or
+     * Long.MAX_VALUE if no collection is ongoing.
+     */
+    long getNextTimeoutTime(long timeout) {
+        long next = Long.MAX_VALUE;
+        for (ScheduledCollection collection : inFlight.values()) {
+            next = Math.min(next, collection.getSubmitTime() + timeout);
+        }
+        return next;
+    }
+
+    /** Cancels and returns the ongoing collections that exceeded the timeout. */
+    List<ScheduledCollection> cancelTimedOut(long now, long timeout) {
+        List<ScheduledCollection> timedOut = new ArrayList<ScheduledCollection>();
+        for (Iterator<ScheduledCollection> it = inFlight.values().iterator(); it.hasNext(); ) {
+            ScheduledCollection collection = it.next();
+            if (now - collection.getSubmitTime() >= timeout) {
+                collection.cancel(true);
+                it.remove();
+                timedOut.add(collection);
+            }
+        }
+        return timedOut;
+    }
+
+    /**
+     * Waits up to the given time for a collection to complete. Returns null if none completed in
+     * time. Collections which were cancelled meanwhile are skipped.
+     */
+    ScheduledCollection pollCompleted(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long wait = timeoutMs;
+        while (wait >= 0) {
+            ScheduledCollection collection = completed.poll(wait, TimeUnit.MILLISECONDS);
+            if (collection == null) {
+                return null;
+            }
+            if (inFlight.get(collection.getInstance()) == collection) {
+                inFlight.remove(collection.getInstance());
+                return collection;
+            }
+            wait = deadline - System.currentTimeMillis();
+        }
+        return null;
+    }
+
+    /** Schedules the next collection of an instance. */
+    void schedule(Instance instance, long dueTime) {
+        queue.add(new ScheduledInstance(instance, dueTime));
+    }
+
+    private static class ScheduledInstance implements Comparable<ScheduledInstance> {
+        private final Instance instance;
+        private final long dueTime;
+
+        ScheduledInstance(Instance instance, long dueTime) {
+            this.instance = instance;
+            this.dueTime = dueTime;
+        }
+
+        @Override
+        public int compareTo(ScheduledInstance other) {
+            return dueTime < other.dueTime ? -1 : (dueTime == other.dueTime ? 0 : 1);
+        }
+    }
+
+    /** Collection of an instance, handed back to the scheduler once done. */
+    class ScheduledCollection extends FutureTask<List<Metric>> {
+        private final MetricCollectionTask task;
+        private final long submitTime;
+
+        ScheduledCollection(Instance instance, Reporter reporter, long submitTime) {
+            this(new MetricCollectionTask(instance, false, reporter, submitTime), submitTime);
+        }
+
+        private ScheduledCollection(MetricCollectionTask task, long submitTime) {
+            super(task);
+            this.task = task;
+            this.submitTime = submitTime;
+        }
+
+        MetricCollectionTask getTask() {
+            return task;
+        }
+
+        Instance getInstance() {
+            return task.getInstance();
+        }
+
+        long getSubmitTime() {
+            return submitTime;
+        }
+
+        @Override
+        protected void done() {
+            completed.offer(this);
+        }
+    }
+}
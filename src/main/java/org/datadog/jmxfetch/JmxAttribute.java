@@ -16,12 +16,15 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.management.AttributeNotFoundException;
+import javax.management.Descriptor;
 import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.openmbean.OpenMBeanAttributeInfo;
+import javax.management.openmbean.OpenType;
 
 @Slf4j
 public abstract class JmxAttribute {
@@ -45,6 +48,9 @@ public abstract class JmxAttribute {
     private static final String ALL_CAP_PATTERN = "([a-z0-9])([A-Z])";
     private static final String METRIC_REPLACEMENT = "([^a-zA-Z0-9_.]+)|(^[^a-zA-Z]+)";
     private static final String DOT_UNDERSCORE = "_*\\._*";
+    // Consecutive slow reads after which an attribute is only read once every few collections
+    private static final int SLOW_READS_BEFORE_DEMOTION = 3;
+    private static final int DEMOTED_COLLECTION_PERIOD = 5;
     protected static final String CASSANDRA_DOMAIN = "org.apache.cassandra.metrics";
 
     private MBeanAttributeInfo attribute;
@@ -67,6 +73,10 @@ public abstract class JmxAttribute {
     private boolean cassandraAliasing;
     protected String checkName;
     private boolean normalizeBeanParamTags;
+    private Object prefetchedValue;
+    private boolean hasPrefetchedValue;
+    private int consecutiveSlowReads;
+    private int skippedCollections;
 
     JmxAttribute(
             MBeanAttributeInfo attribute,
@@ -309,24 +319,88 @@ public abstract class JmxAttribute {
      */
     public abstract boolean match(Configuration conf);
 
-    /** Gets the metric count for the attribute. */
-    public int getMetricsCount() {
-        try {
-            return this.getMetrics().size();
-        } catch (Exception e) {
-            log.warn("Unable to get metrics from " + beanStringName + " - "
-                                                + attributeName + ": " + e.toString());
-            return 0;
-        }
-    }
+    /**
+     * Gets the metric count for the attribute. Computed from the attribute layout resolved when
+     * matching, so that counting does not fetch the attribute value.
+     */
+    public abstract int getMetricsCount();
 
-    /** Gets the JMX Attribute info value. Makes a call through the connection */
+    /**
+     * Gets the JMX Attribute info value. Uses the value fetched in bulk for the current
+     * collection if any, otherwise makes a call through the connection.
+     */
     Object getJmxValue()
             throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
                     ReflectionException, IOException {
+        if (hasPrefetchedValue) {
+            return prefetchedValue;
+        }
         return this.connection.getAttribute(this.beanName, this.attribute.getName());
     }
 
+    /**
+     * Returns the open type of the attribute when the MBean server describes it, i.e. for open
+     * MBeans and MXBeans, or null otherwise.
+     */
+    OpenType<?> getOpenType() {
+        if (attribute instanceof OpenMBeanAttributeInfo) {
+            return ((OpenMBeanAttributeInfo) attribute).getOpenType();
+        }
+        Descriptor descriptor = attribute.getDescriptor();
+        if (descriptor != null) {
+            Object openType = descriptor.getFieldValue("openType");
+            if (openType instanceof OpenType<?>) {
+                return (OpenType<?>) openType;
+            }
+        }
+        return null;
+    }
+
+    /** Sets the value fetched in bulk with the other attributes of the bean. */
+    void setPrefetchedValue(Object value) {
+        this.prefetchedValue = value;
+        this.hasPrefetchedValue = true;
+    }
+
+    /** Reads the attribute through another connection to the same server. */
+    void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /** Drops the value fetched in bulk so that the next read goes through the connection. */
+    void clearPrefetchedValue() {
+        this.prefetchedValue = null;
+        this.hasPrefetchedValue = false;
+    }
+
+    /**
+     * Records how long reading the attribute took. An attribute read slowly several times in a
+     * row is demoted, and promoted back as soon as a read is fast again.
+     */
+    void recordReadLatency(long latencyMs, long slowThresholdMs) {
+        if (latencyMs >= slowThresholdMs) {
+            this.consecutiveSlowReads++;
+        } else {
+            this.consecutiveSlowReads = 0;
+        }
+        this.skippedCollections = 0;
+    }
+
+    /** Returns whether or not the attribute is demoted because of its slow reads. */
+    boolean isDemoted() {
+        return this.consecutiveSlowReads >= SLOW_READS_BEFORE_DEMOTION;
+    }
+
+    /** Returns whether or not the attribute is to be read during the current collection. */
+    boolean isCollectionDue() {
+        return !isDemoted() || this.skippedCollections >= DEMOTED_COLLECTION_PERIOD - 1;
+    }
+
+    /** Records that a demoted attribute was not read during the current collection. */
+    void skipCollection() {
+        this.skippedCollections++;
+    }
+
     boolean matchDomain(Configuration conf) {
         return includeMatchName(domain,
                 conf.getInclude().getDomain(),
@@ -353,12 +427,12 @@ public abstract class JmxAttribute {
                 conf.getExclude().getClassNameRegex());
     }
 
-    private boolean includeMatchName(String name, String includeName, Pattern includeNameRegex) {
+    static boolean includeMatchName(String name, String includeName, Pattern includeNameRegex) {
         return (includeName == null || includeName.equals(name))
                 && (includeNameRegex == null || includeNameRegex.matcher(name).matches());
     }
 
-    private boolean excludeMatchName(String name, String excludeName, Pattern excludeNameRegex) {
+    static boolean excludeMatchName(String name, String excludeName, Pattern excludeNameRegex) {
         return (excludeName != null && excludeName.equals(name))
                 || (excludeNameRegex != null && excludeNameRegex.matcher(name).matches());
     }
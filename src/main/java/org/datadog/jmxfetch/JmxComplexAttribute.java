@@ -19,6 +19,8 @@ import javax.management.MBeanException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
 
 @Slf4j
 @SuppressWarnings("unchecked")
@@ -34,6 +36,7 @@ public class JmxComplexAttribute extends JmxSubAttribute {
 
 
     private List<String> subAttributeList = new ArrayList<String>();
+    private List<Metric> metrics = new ArrayList<Metric>();
 
     /** JmxComplexAttribute constructor. */
     public JmxComplexAttribute(
@@ -81,25 +84,32 @@ public class JmxComplexAttribute extends JmxSubAttribute {
         }
     }
 
+    private void populateSubAttributeList(CompositeType compositeType) {
+        this.subAttributeList.addAll(compositeType.keySet());
+    }
+
+    @Override
+    public int getMetricsCount() {
+        return subAttributeList.size();
+    }
+
     @Override
     public List<Metric> getMetrics() throws AttributeNotFoundException, MBeanException,
             ReflectionException, InstanceNotFoundException, IOException {
-        List<Metric> metrics = new ArrayList<Metric>(subAttributeList.size());
+        // The list and its metrics are reused from one collection to the next
+        metrics.clear();
+        // Fetch the whole value once per collection, sub-attributes are read from it
+        Object value = this.getJmxValue();
         for (String subAttribute : subAttributeList) {
             Metric metric = getCachedMetric(subAttribute);
-            double value = castToDouble(getValue(subAttribute), subAttribute);
-            metric.setValue(value);
+            metric.setValue(castToDouble(getValue(value, subAttribute), subAttribute));
             metrics.add(metric);
         }
         return metrics;
     }
 
-    private Object getValue(String subAttribute)
-            throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
-                    ReflectionException, IOException {
-
-        Object value = this.getJmxValue();
-
+    private Object getValue(Object value, String subAttribute)
+            throws AttributeNotFoundException, ReflectionException {
         if (value instanceof CompositeData) {
             CompositeData data = (CompositeData) value;
             return data.get(subAttribute);
@@ -130,7 +140,13 @@ public class JmxComplexAttribute extends JmxSubAttribute {
         }
 
         try {
-            populateSubAttributeList(getJmxValue());
+            OpenType<?> openType = getOpenType();
+            if (openType instanceof CompositeType) {
+                // The MBean info describes the keys, no need to fetch the value
+                populateSubAttributeList((CompositeType) openType);
+            } else {
+                populateSubAttributeList(getJmxValue());
+            }
         } catch (Exception e) {
             return false;
         }
@@ -53,6 +53,10 @@ public class JmxFetch {
             attachShutdownHook();
         }
 
+        if (config.isShardSupervisor() && AppConfig.ACTION_COLLECT.equals(config.getAction())) {
+            System.exit(new ShardSupervisor(config, args).run());
+        }
+
         App app = new App(config);
         System.exit(app.run());
     }
@@ -45,6 +45,7 @@ public class JmxSimpleAttribute extends JmxAttribute {
                     "class java.lang.Boolean",
                     "class java.lang.Number");
     private Metric cachedMetric;
+    private List<Metric> cachedMetrics;
 
     /** JmxSimpleAttribute constructor. */
     public JmxSimpleAttribute(
@@ -84,10 +85,16 @@ public class JmxSimpleAttribute extends JmxAttribute {
             String metricType = getMetricType(null);
             String[] tags = getTags();
             cachedMetric = new Metric(alias, metricType, tags, checkName);
+            cachedMetrics = Collections.singletonList(cachedMetric);
         }
         double value = castToDouble(getValue(), null);
         cachedMetric.setValue(value);
-        return Collections.singletonList(cachedMetric);
+        return cachedMetrics;
+    }
+
+    @Override
+    public int getMetricsCount() {
+        return 1;
     }
 
     public static boolean matchAttributeType(String attributeType) {
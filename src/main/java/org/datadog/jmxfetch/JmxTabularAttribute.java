@@ -10,9 +10,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanAttributeInfo;
@@ -30,8 +32,17 @@ public class JmxTabularAttribute extends JmxSubAttribute {
                     "javax.management.openmbean.TabularData",
                     //Adding TabularDataSupport as it implements TabularData
                     "javax.management.openmbean.TabularDataSupport");
+    private static final List<String> AGGREGATIONS =
+            Arrays.asList("sum", "min", "max", "avg", "count");
     private String instanceName;
     private Map<String, List<String>> subAttributeList;
+    private Map<String, Map<String, RowMetric>> cachedRowMetrics =
+            new HashMap<String, Map<String, RowMetric>>();
+    private Map<String, CompositeData> rowsByKey = new HashMap<String, CompositeData>();
+    private Map<String, List<Metric>> subMetrics = new HashMap<String, List<Metric>>();
+    private Map<String, Map<String, RowGroup>> rowGroups =
+            new HashMap<String, Map<String, RowGroup>>();
+    private List<Metric> metrics = new ArrayList<Metric>();
 
     /** Default constructor. */
     public JmxTabularAttribute(
@@ -101,9 +112,7 @@ public class JmxTabularAttribute extends JmxSubAttribute {
         }
     }
 
-    protected String[] getTags(String key, String subAttribute)
-            throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
-                    ReflectionException, IOException {
+    protected String[] getTags(Map<String, CompositeData> rows, String key, String subAttribute) {
         List<String> tagsList = new ArrayList<String>();
         String fullMetricKey = getAttributeName() + "." + subAttribute;
         Map<String, ?> attributeParams = getAttributesFor(fullMetricKey);
@@ -112,18 +121,7 @@ public class JmxTabularAttribute extends JmxSubAttribute {
 
             if (yamlTags != null) {
                 for (String tagName : yamlTags.keySet()) {
-                    String tag = tagName;
-                    String value = yamlTags.get(tagName);
-                    Object resolvedValue;
-
-                    if (value.startsWith("$")) {
-                        resolvedValue = getValue(key, value.substring(1));
-                        if (resolvedValue != null) {
-                            value = (String) resolvedValue;
-                        }
-                    }
-
-                    tagsList.add(tag + ":" + value);
+                    tagsList.add(tagName + ":" + getTagValue(rows, key, yamlTags.get(tagName)));
                 }
             }
         }
@@ -135,6 +133,44 @@ public class JmxTabularAttribute extends JmxSubAttribute {
         return tags;
     }
 
+    /** Resolves a tag value, which may refer to a value of the row with a "$". */
+    private String getTagValue(Map<String, CompositeData> rows, String key, String value) {
+        if (value.startsWith("$")) {
+            Object resolvedValue = getValue(rows, key, value.substring(1));
+            if (resolvedValue != null) {
+                return (String) resolvedValue;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the tags of the group a row is aggregated in: the tags listed by "group_by", and
+     * the default tags.
+     */
+    private String[] getGroupTags(
+            Map<String, CompositeData> rows, String key, Map<String, ?> attributeParams) {
+        List<String> tagsList = new ArrayList<String>();
+        Map<String, String> yamlTags = (Map) attributeParams.get("tags");
+        List<String> groupBy = (List<String>) attributeParams.get("group_by");
+        if (yamlTags != null && groupBy != null) {
+            for (String tagName : groupBy) {
+                String value = yamlTags.get(tagName);
+                if (value != null) {
+                    tagsList.add(tagName + ":" + getTagValue(rows, key, value));
+                }
+            }
+        }
+        tagsList.addAll(Arrays.asList(super.getTags()));
+        return tagsList.toArray(new String[tagsList.size()]);
+    }
+
+    /** Returns the aggregation of the rows of a metric, or null if each row is reported. */
+    private static String getAggregation(Map<String, ?> attributeParams) {
+        Object aggregation = attributeParams.get("aggregate");
+        return AGGREGATIONS.contains(aggregation) ? (String) aggregation : null;
+    }
+
     private Map<String, ?> getAttributesFor(String key) {
         Filter include = getMatchingConf().getInclude();
         if (include != null) {
@@ -146,41 +182,285 @@ public class JmxTabularAttribute extends JmxSubAttribute {
         return null;
     }
 
+    @Override
+    public int getMetricsCount() {
+        // Rows are only known from the value fetched when matching, count them per metric
+        Map<String, Integer> rowsByMetricKey = new HashMap<String, Integer>();
+        for (List<String> subSub : subAttributeList.values()) {
+            for (String metricKey : subSub) {
+                String fullMetricKey = getAttributeName() + "." + metricKey;
+                Integer rows = rowsByMetricKey.get(fullMetricKey);
+                rowsByMetricKey.put(fullMetricKey, rows == null ? 1 : rows + 1);
+            }
+        }
+
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : rowsByMetricKey.entrySet()) {
+            // only count explicitly included metrics
+            Map<String, ?> attributes = getAttributesFor(entry.getKey());
+            if (attributes == null) {
+                continue;
+            }
+            int rows = entry.getValue();
+            if (attributes.containsKey("aggregate") && getAggregation(attributes) == null) {
+                log.warn("Unknown aggregation `" + attributes.get("aggregate") + "` for `"
+                        + entry.getKey() + "`, reporting each row instead. Valid aggregations are "
+                        + AGGREGATIONS);
+            } else if (attributes.containsKey("aggregate")) {
+                rows = getGroupCount(entry.getKey(), attributes);
+            }
+            // Same truncation as sortAndFilter
+            if (attributes.containsKey("limit") && rows > (Integer) attributes.get("limit")) {
+                rows -= (Integer) attributes.get("limit");
+            }
+            count += rows;
+        }
+        return count;
+    }
+
+    /** Returns the number of groups the rows of a metric are aggregated in. */
+    private int getGroupCount(String fullMetricKey, Map<String, ?> attributes) {
+        Set<List<String>> groups = new HashSet<List<String>>();
+        for (Map.Entry<String, List<String>> entry : subAttributeList.entrySet()) {
+            for (String metricKey : entry.getValue()) {
+                if (fullMetricKey.equals(getAttributeName() + "." + metricKey)
+                        && rowsByKey.containsKey(entry.getKey())) {
+                    groups.add(Arrays.asList(getGroupTags(rowsByKey, entry.getKey(), attributes)));
+                }
+            }
+        }
+        return groups.size();
+    }
+
     @Override
     public List<Metric> getMetrics()
             throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
                     ReflectionException, IOException {
-        Map<String, List<Metric>> subMetrics = new HashMap<String, List<Metric>>();
+        // Fetch the table once per collection and index its rows by multi-key
+        Map<String, CompositeData> rows = getRowsByKey((TabularData) this.getJmxValue());
 
+        // Lists and metrics are reused from one collection to the next
+        for (List<Metric> keyMetrics : subMetrics.values()) {
+            keyMetrics.clear();
+        }
+        for (Map<String, RowGroup> groups : rowGroups.values()) {
+            for (RowGroup group : groups.values()) {
+                group.reset();
+            }
+        }
         for (Map.Entry<String, List<String>> entry : subAttributeList.entrySet()) {
             String dataKey = entry.getKey();
             List<String> subSub = entry.getValue();
             for (String metricKey : subSub) {
-                String alias = getAlias(metricKey);
-                String metricType = getMetricType(metricKey);
-                String[] tags = getTags(dataKey, metricKey); // /!| Cannot be cached as is
-                Metric metric = new Metric(alias, metricType, tags, checkName);
-                double value = castToDouble(getValue(dataKey, metricKey), null);
-                metric.setValue(value);
-                String fullMetricKey = getAttributeName() + "." + metricKey;
-                if (!subMetrics.containsKey(fullMetricKey)) {
-                    subMetrics.put(fullMetricKey, new ArrayList<Metric>());
+                RowMetric rowMetric = getRowMetric(rows, dataKey, metricKey);
+                double value = castToDouble(getValue(rows, dataKey, metricKey), null);
+                if (rowMetric.group != null) {
+                    rowMetric.group.add(value);
+                    continue;
+                }
+                rowMetric.metric.setValue(value);
+                getKeyMetrics(rowMetric.fullMetricKey).add(rowMetric.metric);
+            }
+        }
+
+        // Aggregated rows are reported as one metric per group
+        for (Iterator<Map.Entry<String, Map<String, RowGroup>>> it =
+                rowGroups.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Map<String, RowGroup>> entry = it.next();
+            for (Iterator<RowGroup> groupIt = entry.getValue().values().iterator();
+                    groupIt.hasNext(); ) {
+                RowGroup group = groupIt.next();
+                if (group.count > 0) {
+                    group.metric.setValue(group.getValue());
+                    getKeyMetrics(entry.getKey()).add(group.metric);
+                } else {
+                    // No row was left in the group for a whole collection
+                    group.removed = true;
+                    groupIt.remove();
                 }
-                subMetrics.get(fullMetricKey).add(metric);
+            }
+            if (entry.getValue().isEmpty()) {
+                it.remove();
             }
         }
 
-        List<Metric> metrics = new ArrayList<Metric>(subMetrics.keySet().size());
-        for (String key : subMetrics.keySet()) {
+        metrics.clear();
+        for (Map.Entry<String, List<Metric>> entry : subMetrics.entrySet()) {
             // only add explicitly included metrics
-            if (getAttributesFor(key) != null) {
-                metrics.addAll(sortAndFilter(key, subMetrics.get(key)));
+            if (getAttributesFor(entry.getKey()) != null) {
+                metrics.addAll(sortAndFilter(entry.getKey(), entry.getValue()));
             }
         }
 
         return metrics;
     }
 
+    private List<Metric> getKeyMetrics(String fullMetricKey) {
+        List<Metric> keyMetrics = subMetrics.get(fullMetricKey);
+        if (keyMetrics == null) {
+            keyMetrics = new ArrayList<Metric>();
+            subMetrics.put(fullMetricKey, keyMetrics);
+        }
+        return keyMetrics;
+    }
+
+    /**
+     * Returns the group rows of a metric with the given tags are aggregated in, created on first
+     * use.
+     */
+    private RowGroup getRowGroup(
+            String fullMetricKey, String metricKey, String aggregation, String[] groupTags) {
+        Map<String, RowGroup> groups = rowGroups.get(fullMetricKey);
+        if (groups == null) {
+            groups = new HashMap<String, RowGroup>();
+            rowGroups.put(fullMetricKey, groups);
+        }
+        String groupKey = Arrays.toString(groupTags);
+        RowGroup group = groups.get(groupKey);
+        if (group == null) {
+            Metric metric = new Metric(
+                    getAlias(metricKey), getMetricType(metricKey), groupTags, checkName);
+            group = new RowGroup(metric, aggregation);
+            groups.put(groupKey, group);
+        }
+        return group;
+    }
+
+    /**
+     * Returns the metric of a row, built on first use. Tags may refer to values of the row, so
+     * the metric is rebuilt when one of these values changes.
+     */
+    private RowMetric getRowMetric(
+            Map<String, CompositeData> rows, String dataKey, String metricKey) {
+        Map<String, RowMetric> rowMetrics = cachedRowMetrics.get(dataKey);
+        if (rowMetrics == null) {
+            rowMetrics = new HashMap<String, RowMetric>();
+            cachedRowMetrics.put(dataKey, rowMetrics);
+        }
+        RowMetric rowMetric = rowMetrics.get(metricKey);
+        if (rowMetric != null && !rowMetric.tagValuesChanged(rows, dataKey)
+                && (rowMetric.group == null || !rowMetric.group.removed)) {
+            return rowMetric;
+        }
+
+        String fullMetricKey = getAttributeName() + "." + metricKey;
+        List<String> tagReferences = getTagReferences(fullMetricKey);
+        Object[] tagValues = new Object[tagReferences.size()];
+        for (int i = 0; i < tagValues.length; i++) {
+            tagValues[i] = getValue(rows, dataKey, tagReferences.get(i));
+        }
+        Map<String, ?> attributeParams = getAttributesFor(fullMetricKey);
+        String aggregation = attributeParams != null ? getAggregation(attributeParams) : null;
+        Metric metric = null;
+        RowGroup group = null;
+        if (aggregation != null) {
+            // Rows are only reported through their group
+            group = getRowGroup(fullMetricKey, metricKey, aggregation,
+                    getGroupTags(rows, dataKey, attributeParams));
+        } else {
+            metric = new Metric(
+                    getAlias(metricKey),
+                    getMetricType(metricKey),
+                    getTags(rows, dataKey, metricKey),
+                    checkName);
+        }
+        rowMetric = new RowMetric(fullMetricKey, metric, group, tagReferences, tagValues);
+        rowMetrics.put(metricKey, rowMetric);
+        return rowMetric;
+    }
+
+    /** Returns the names of the row values the tags of a metric refer to with a "$". */
+    private List<String> getTagReferences(String fullMetricKey) {
+        List<String> tagReferences = new ArrayList<String>();
+        Map<String, ?> attributeParams = getAttributesFor(fullMetricKey);
+        if (attributeParams != null) {
+            Map<String, String> yamlTags = (Map) attributeParams.get("tags");
+            if (yamlTags != null) {
+                for (String value : yamlTags.values()) {
+                    if (value.startsWith("$")) {
+                        tagReferences.add(value.substring(1));
+                    }
+                }
+            }
+        }
+        return tagReferences;
+    }
+
+    private class RowMetric {
+        private final String fullMetricKey;
+        private final Metric metric;
+        private final RowGroup group;
+        private final List<String> tagReferences;
+        private final Object[] tagValues;
+
+        RowMetric(
+                String fullMetricKey,
+                Metric metric,
+                RowGroup group,
+                List<String> tagReferences,
+                Object[] tagValues) {
+            this.fullMetricKey = fullMetricKey;
+            this.metric = metric;
+            this.group = group;
+            this.tagReferences = tagReferences;
+            this.tagValues = tagValues;
+        }
+
+        boolean tagValuesChanged(Map<String, CompositeData> rows, String dataKey) {
+            for (int i = 0; i < tagValues.length; i++) {
+                Object value = getValue(rows, dataKey, tagReferences.get(i));
+                if (value == null ? tagValues[i] != null : !value.equals(tagValues[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Rows of a metric aggregated into a single metric, per "group_by" tag values. */
+    private static class RowGroup {
+        private final Metric metric;
+        private final String aggregation;
+        private boolean removed;
+        private int count;
+        private double sum;
+        private double min;
+        private double max;
+
+        RowGroup(Metric metric, String aggregation) {
+            this.metric = metric;
+            this.aggregation = aggregation;
+            reset();
+        }
+
+        void reset() {
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+
+        void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        double getValue() {
+            if (aggregation.equals("min")) {
+                return min;
+            } else if (aggregation.equals("max")) {
+                return max;
+            } else if (aggregation.equals("avg")) {
+                return sum / count;
+            } else if (aggregation.equals("count")) {
+                return count;
+            }
+            return sum;
+        }
+    }
+
     private List<Metric> sortAndFilter(String metricKey, List<Metric> metrics) {
         Map<String, ?> attributes = getAttributesFor(metricKey);
         if (!attributes.containsKey("limit")) {
@@ -207,35 +487,35 @@ public class JmxTabularAttribute extends JmxSubAttribute {
         }
     }
 
-    private Object getValue(String key, String subAttribute)
-            throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
-                    ReflectionException, IOException {
+    private Map<String, CompositeData> getRowsByKey(TabularData data) {
+        rowsByKey.clear();
+        for (Object rowKey : data.keySet()) {
+            Collection keys = (Collection) rowKey;
+            rowsByKey.put(getMultiKey(keys), data.get(keys.toArray()));
+        }
+        return rowsByKey;
+    }
+
+    private Object getValue(Map<String, CompositeData> rows, String key, String subAttribute) {
+        CompositeData compositeData = rows.get(key);
+        if (compositeData == null) {
+            throw new NumberFormatException();
+        }
 
         try {
-            Object value = this.getJmxValue();
-            String attributeType = getAttribute().getType();
-
-            TabularData data = (TabularData) value;
-            for (Object rowKey : data.keySet()) {
-                Collection keys = (Collection) rowKey;
-                String pathKey = getMultiKey(keys);
-                if (key.equals(pathKey)) {
-                    CompositeData compositeData = data.get(keys.toArray());
-                    if (subAttribute.contains(".")) {
-                        // walk down the path
-                        Object obj;
-                        for (String subPathKey : subAttribute.split("\\.")) {
-                            obj = compositeData.get(subPathKey);
-                            if (obj instanceof CompositeData) {
-                                compositeData = (CompositeData) obj;
-                            } else {
-                                return compositeData.get(subPathKey);
-                            }
-                        }
+            if (subAttribute.contains(".")) {
+                // walk down the path
+                Object obj;
+                for (String subPathKey : subAttribute.split("\\.")) {
+                    obj = compositeData.get(subPathKey);
+                    if (obj instanceof CompositeData) {
+                        compositeData = (CompositeData) obj;
                     } else {
-                        return compositeData.get(subAttribute);
+                        return compositeData.get(subPathKey);
                     }
                 }
+            } else {
+                return compositeData.get(subAttribute);
             }
         } catch (InvalidKeyException e) {
             log.warn(
@@ -262,7 +542,10 @@ public class JmxTabularAttribute extends JmxSubAttribute {
         }
 
         try {
-            populateSubAttributeList(getJmxValue());
+            Object value = getJmxValue();
+            populateSubAttributeList(value);
+            // Rows are kept to count the groups of aggregated metrics
+            getRowsByKey((TabularData) value);
         } catch (Exception e) {
             return false;
         }
@@ -0,0 +1,52 @@
+package org.datadog.jmxfetch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.Descriptor;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * Caches the MBean info of beans flagged with an immutable info, i.e. standard MBeans and MXBeans,
+ * so that beans of the same class and name structure are only introspected once.
+ */
+class MBeanInfoCache {
+    private final ConcurrentMap<String, MBeanInfo> infos =
+            new ConcurrentHashMap<String, MBeanInfo>();
+
+    /** Returns the cached info for a bean of the given class, or null if none is cached. */
+    MBeanInfo get(ObjectName beanName, String className) {
+        return infos.get(getKey(beanName, className));
+    }
+
+    /** Caches the info of a bean, provided the server guarantees that it cannot change. */
+    void put(ObjectName beanName, MBeanInfo info) {
+        if (isImmutable(info)) {
+            infos.put(getKey(beanName, info.getClassName()), info);
+        }
+    }
+
+    void clear() {
+        infos.clear();
+    }
+
+    private static String getKey(ObjectName beanName, String className) {
+        // The domain and the key property names describe the structure of the bean, the
+        // property values only identify one bean among its siblings
+        List<String> keys = new ArrayList<String>(beanName.getKeyPropertyList().keySet());
+        Collections.sort(keys);
+        return className + "|" + beanName.getDomain() + "|" + keys;
+    }
+
+    /** Returns whether the server guarantees that the info of the bean cannot change. */
+    static boolean isImmutable(MBeanInfo info) {
+        Descriptor descriptor = info.getDescriptor();
+        if (descriptor == null) {
+            return false;
+        }
+        return "true".equalsIgnoreCase(String.valueOf(descriptor.getFieldValue("immutableInfo")));
+    }
+}
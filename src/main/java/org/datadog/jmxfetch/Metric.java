@@ -9,7 +9,10 @@ public class Metric {
     private final String[] tags;
     private final String checkName;
     private double value;
-
+    private Object seriesOwner;
+    private int seriesId = -1;
+    private Object encodingOwner;
+    private Object encoding;
 
     /**
      * Metric constructor.
@@ -44,4 +47,26 @@ public class Metric {
     public void setValue(double value) {
         this.value = value;
     }
+
+    /** Returns the id of the metric series in the given owner, or -1 if none was assigned. */
+    public int getSeriesId(Object owner) {
+        return owner == seriesOwner ? seriesId : -1;
+    }
+
+    /** Sets the id of the metric series in the given owner, e.g. a reporter's series store. */
+    public void setSeriesId(Object owner, int seriesId) {
+        this.seriesOwner = owner;
+        this.seriesId = seriesId;
+    }
+
+    /** Returns the encoding of the metric cached by the given owner, or null if none was set. */
+    public Object getEncoding(Object owner) {
+        return owner == encodingOwner ? encoding : null;
+    }
+
+    /** Caches an encoding of the metric, e.g. its pre-serialized statsd line, for the owner. */
+    public void setEncoding(Object owner, Object encoding) {
+        this.encodingOwner = owner;
+        this.encoding = encoding;
+    }
 }
@@ -1,21 +1,40 @@
 package org.datadog.jmxfetch;
 
 import lombok.extern.slf4j.Slf4j;
+import org.datadog.jmxfetch.reporter.Reporter;
 
 import java.util.Collections;
 import java.util.List;
 
 @Slf4j
 class MetricCollectionTask extends InstanceTask<List<Metric>> {
+    private final boolean checkTimeToCollect;
+    private final Reporter reporter;
+    private final long submitTime;
+
     MetricCollectionTask(Instance instance) {
+        this(instance, true, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a collection task, skipping the min_collection_interval check when the caller
+     * already schedules collections according to it. When given a reporter, the metrics are
+     * reported by the task itself rather than by the caller once the task completes. The
+     * collection timeout of the task is counted from its submit time.
+     */
+    MetricCollectionTask(
+            Instance instance, boolean checkTimeToCollect, Reporter reporter, long submitTime) {
         super(instance);
+        this.checkTimeToCollect = checkTimeToCollect;
+        this.reporter = reporter;
+        this.submitTime = submitTime;
         setWarning("Unable to collect metrics or refresh bean list.");
     }
 
     @Override
     public List<Metric> call() throws Exception {
 
-        if (!instance.timeToCollect()) {
+        if (checkTimeToCollect && !instance.timeToCollect()) {
             log.debug(
                     "it is not time to collect, skipping run for instance: " + instance.getName());
 
@@ -23,6 +42,17 @@ class MetricCollectionTask extends InstanceTask<List<Metric>> {
             return Collections.emptyList();
         }
 
-        return instance.getMetrics();
+        // Metrics are reported before the instance may be initialized again
+        instance.lockCollection();
+        try {
+            List<Metric> metrics = instance.getMetrics(submitTime);
+            if (reporter != null && !metrics.isEmpty()) {
+                reporter.sendMetrics(metrics, instance.getName(),
+                        instance.getCanonicalRateConfig(), instance.getSendOnChangeHeartbeat());
+            }
+            return metrics;
+        } finally {
+            instance.unlockCollection();
+        }
     }
 }
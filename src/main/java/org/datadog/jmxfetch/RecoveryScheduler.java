@@ -0,0 +1,181 @@
+package org.datadog.jmxfetch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.datadog.jmxfetch.tasks.TaskProcessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Schedules the recovery of broken instances without blocking the collection. Each broken instance
+ * acts as a circuit breaker: it stays open while waiting for its next attempt, with an exponential
+ * backoff and jitter between failed attempts, and is half open while an attempt is ongoing.
+ */
+@Slf4j
+class RecoveryScheduler {
+    static final String STATE_OPEN = "open";
+    static final String STATE_HALF_OPEN = "half_open";
+    private static final long MAX_BACKOFF_MS = 300000;
+
+    private final Map<String, RecoveryState> states = new HashMap<String, RecoveryState>();
+    private final BlockingQueue<RecoveryAttempt> completed =
+            new LinkedBlockingQueue<RecoveryAttempt>();
+    private final Random random = new Random();
+
+    /**
+     * Starts tracking a broken instance, due for a first attempt right away. Returns false if the
+     * instance is already tracked.
+     */
+    boolean track(Instance instance, long now) {
+        String key = instance.toString();
+        if (states.containsKey(key)) {
+            return false;
+        }
+        states.put(key, new RecoveryState(instance, now));
+        return true;
+    }
+
+    /** Returns whether or not a recovery attempt of the instance is due. */
+    boolean isDue(Instance instance, long now) {
+        RecoveryState state = states.get(instance.toString());
+        return state != null && state.attempt == null && state.nextAttemptTime <= now;
+    }
+
+    /** Submits a recovery attempt of a broken instance. */
+    void submit(Instance instance, InstanceInitializingTask task, TaskProcessor processor,
+            long now) {
+        RecoveryState state = states.get(instance.toString());
+        state.attempt = new RecoveryAttempt(state, task, now);
+        processor.execute(state.attempt);
+    }
+
+    /** Returns the attempts completed since the last call, without waiting. */
+    List<RecoveryAttempt> pollCompleted() {
+        List<RecoveryAttempt> attempts = new ArrayList<RecoveryAttempt>();
+        RecoveryAttempt attempt;
+        while ((attempt = completed.poll()) != null) {
+            // Attempts cancelled meanwhile are not current anymore
+            if (attempt.state.attempt == attempt && states.get(attempt.state.key) == attempt.state) {
+                attempts.add(attempt);
+            }
+        }
+        return attempts;
+    }
+
+    /** Cancels and returns the ongoing attempts that exceeded the timeout. */
+    List<RecoveryAttempt> cancelTimedOut(long now, long timeout) {
+        List<RecoveryAttempt> timedOut = new ArrayList<RecoveryAttempt>();
+        for (RecoveryState state : states.values()) {
+            RecoveryAttempt attempt = state.attempt;
+            if (attempt != null && !attempt.isDone() && now - attempt.submitTime >= timeout) {
+                attempt.cancel(true);
+                timedOut.add(attempt);
+            }
+        }
+        return timedOut;
+    }
+
+    /** Stops tracking an instance which recovered. */
+    void recovered(RecoveryAttempt attempt) {
+        states.remove(attempt.state.key);
+    }
+
+    /** Schedules the next attempt of an instance which did not recover. */
+    void failed(RecoveryAttempt attempt, long now, long baseBackoff) {
+        RecoveryState state = attempt.state;
+        state.attempt = null;
+        state.failedAttempts++;
+        state.nextAttemptTime = now + getBackoff(state.failedAttempts, baseBackoff);
+        log.debug("Next recovery attempt of instance {} in {} ms",
+                state.key, state.nextAttemptTime - now);
+    }
+
+    /** Returns the states of the instances being recovered. */
+    Iterable<RecoveryState> getStates() {
+        return states.values();
+    }
+
+    /** Cancels the ongoing attempts and forgets about all the instances. */
+    void clear() {
+        for (Iterator<RecoveryState> it = states.values().iterator(); it.hasNext(); ) {
+            RecoveryState state = it.next();
+            if (state.attempt != null) {
+                state.attempt.cancel(true);
+            }
+            it.remove();
+        }
+        completed.clear();
+    }
+
+    /** Exponential backoff with jitter, between half and all of the exponential delay. */
+    private long getBackoff(int failedAttempts, long baseBackoff) {
+        long backoff = baseBackoff;
+        for (int i = 1; i < failedAttempts && backoff < MAX_BACKOFF_MS; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, MAX_BACKOFF_MS);
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    /** Recovery state of a broken instance. */
+    static class RecoveryState {
+        private final String key;
+        private final Instance instance;
+        private int failedAttempts;
+        private long nextAttemptTime;
+        private RecoveryAttempt attempt;
+
+        RecoveryState(Instance instance, long nextAttemptTime) {
+            this.key = instance.toString();
+            this.instance = instance;
+            this.nextAttemptTime = nextAttemptTime;
+        }
+
+        Instance getInstance() {
+            return instance;
+        }
+
+        String getCircuitState() {
+            return attempt != null ? STATE_HALF_OPEN : STATE_OPEN;
+        }
+
+        int getFailedAttempts() {
+            return failedAttempts;
+        }
+
+        long getNextAttemptTime() {
+            return nextAttemptTime;
+        }
+    }
+
+    /** Recovery attempt of an instance, handed back to the scheduler once done. */
+    class RecoveryAttempt extends FutureTask<Void> {
+        private final RecoveryState state;
+        private final InstanceInitializingTask task;
+        private final long submitTime;
+
+        RecoveryAttempt(RecoveryState state, InstanceInitializingTask task, long submitTime) {
+            super(task);
+            this.state = state;
+            this.task = task;
+            this.submitTime = submitTime;
+        }
+
+        InstanceInitializingTask getTask() {
+            return task;
+        }
+
+        @Override
+        protected void done() {
+            completed.offer(this);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.datadog.jmxfetch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts a worker process per shard and supervises them. Each worker only collects the instances
+ * of its shard, which are assigned by rendezvous hashing of their names so that changing the
+ * number of shards only moves the instances of the added or removed shards. Workers write their
+ * status to a file of their own, which the supervisor aggregates into a single status.
+ */
+@Slf4j
+public class ShardSupervisor {
+    // Options set by the supervisor for each worker
+    private static final List<String> WORKER_OPTIONS = Arrays.asList(
+            "--shard_index", "--status_location", "-s", "--log_location", "-l");
+    // Configs written to the pipe are read by a single process, whatever shard they belong to
+    static final String AUTO_DISCOVERY_PIPE_ERROR =
+            "shard_count cannot be used with the auto-discovery pipe. Exiting.";
+
+    private final AppConfig appConfig;
+    private final String[] args;
+    private final Process[] workers;
+    private final File[] statusFiles;
+    private boolean stopped;
+
+    /** Supervisor of the worker processes started with the given command line arguments. */
+    public ShardSupervisor(AppConfig appConfig, String[] args) {
+        this.appConfig = appConfig;
+        this.args = args;
+        this.workers = new Process[appConfig.getShardCount()];
+        this.statusFiles = new File[appConfig.getShardCount()];
+    }
+
+    /** Returns the shard of the instance with the given name. */
+    static int getShard(String instanceName, int shardCount) {
+        long keyHash = instanceName != null ? instanceName.hashCode() : 0;
+        int shard = 0;
+        long maxWeight = Long.MIN_VALUE;
+        for (int i = 0; i < shardCount; i++) {
+            long weight = mix((keyHash << 32) | i);
+            if (weight > maxWeight) {
+                maxWeight = weight;
+                shard = i;
+            }
+        }
+        return shard;
+    }
+
+    /** Finalizer of MurmurHash3, spreading the bits of the key over the whole hash. */
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /** Runs the workers until the exit file shows up, restarting the ones which exit. */
+    public int run() {
+        if (appConfig.getAutoDiscoveryPipeEnabled()) {
+            log.error(AUTO_DISCOVERY_PIPE_ERROR);
+            return 1;
+        }
+        log.info("JMX Fetch {} is starting {} shard workers",
+                appConfig.getVersion(), workers.length);
+        appConfig.updateStatus();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                stopWorkers();
+            }
+        });
+
+        try {
+            File statusDir = Files.createTempDirectory("jmxfetch-shards").toFile();
+            statusDir.deleteOnExit();
+            for (int i = 0; i < workers.length; i++) {
+                statusFiles[i] = new File(statusDir, "shard-" + i + ".yaml");
+                statusFiles[i].deleteOnExit();
+            }
+
+            while (!appConfig.getExitWatcher().shouldExit()) {
+                if (!startExitedWorkers()) {
+                    return 0;
+                }
+                aggregateStatus();
+                Thread.sleep(appConfig.getCheckPeriod());
+            }
+            log.info("Exit file detected: stopping shard workers");
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (IOException e) {
+            log.error("Unable to start shard workers", e);
+            return 1;
+        } finally {
+            stopWorkers();
+        }
+    }
+
+    /** Starts the workers not running, returns false if the workers were stopped meanwhile. */
+    private synchronized boolean startExitedWorkers() throws IOException {
+        if (stopped) {
+            return false;
+        }
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null && isRunning(workers[i])) {
+                continue;
+            }
+            if (workers[i] != null) {
+                log.warn("Shard worker {} exited with code {}, restarting it",
+                        i, workers[i].exitValue());
+            }
+            workers[i] = startWorker(i);
+        }
+        return true;
+    }
+
+    private Process startWorker(int shardIndex) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home")
+                + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(JmxFetch.class.getName());
+        command.addAll(getWorkerArgs(args, shardIndex, statusFiles[shardIndex].getAbsolutePath(),
+                appConfig.getLogLocation()));
+
+        log.info("Starting shard worker {}", shardIndex);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Returns the arguments of a worker: the ones of the supervisor, with the shard index, the
+     * status file and the log file of the worker instead of the ones of the supervisor.
+     */
+    static List<String> getWorkerArgs(
+            String[] args, int shardIndex, String statusLocation, String logLocation) {
+        List<String> workerArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (WORKER_OPTIONS.contains(args[i])) {
+                // Skip the value as well
+                i++;
+            } else {
+                workerArgs.add(args[i]);
+            }
+        }
+        workerArgs.add("--shard_index");
+        workerArgs.add(String.valueOf(shardIndex));
+        workerArgs.add("--status_location");
+        workerArgs.add(statusLocation);
+        if (logLocation != null) {
+            workerArgs.add("--log_location");
+            workerArgs.add(logLocation + ".shard-" + shardIndex);
+        }
+        return workerArgs;
+    }
+
+    private void aggregateStatus() {
+        Status status = appConfig.getStatus();
+        if (!status.isEnabled()) {
+            return;
+        }
+        int errors = 0;
+        for (File statusFile : statusFiles) {
+            if (!statusFile.exists()) {
+                continue;
+            }
+            try (InputStream inputStream = new FileInputStream(statusFile)) {
+                Map<String, Object> shardStatus = ConfigYaml.parse(inputStream);
+                if (shardStatus != null) {
+                    errors += status.addShardStatus(shardStatus);
+                }
+            } catch (Exception e) {
+                log.debug("Unable to read the status of shard worker {}", statusFile, e);
+            }
+        }
+        status.addErrorStats(errors);
+        status.flush();
+    }
+
+    private static boolean isRunning(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    private synchronized void stopWorkers() {
+        stopped = true;
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].destroy();
+                workers[i] = null;
+            }
+        }
+    }
+}
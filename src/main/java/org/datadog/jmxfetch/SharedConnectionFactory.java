@@ -0,0 +1,291 @@
+package org.datadog.jmxfetch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Shares connections between the instances targeting the same JVM with the same credentials.
+ * Connections are reference counted and closed once released by the last instance. Bean lists
+ * queried through a shared connection are reused by the other instances for a short while, as
+ * instances refreshing their bean list at the same time would otherwise query the same beans.
+ */
+@Slf4j
+public class SharedConnectionFactory implements ConnectionFactory {
+    private static final long BEAN_LIST_TTL_MS = 30000;
+    private static final List<String> CONNECTION_KEYS = Arrays.asList(
+            Instance.JVM_DIRECT,
+            Instance.PROCESS_NAME_REGEX,
+            "host",
+            "port",
+            "path",
+            "jmx_url",
+            "user",
+            "password",
+            "rmi_registry_ssl",
+            "rmi_client_timeout",
+            "rmi_connection_timeout",
+            "trust_store_path",
+            "trust_store_password",
+            "key_store_path",
+            "key_store_password");
+
+    private final ConnectionFactory connectionFactory;
+    private final Map<String, SharedEntry> entries = new HashMap<String, SharedEntry>();
+
+    public SharedConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Returns a connection sharing the live connection of another instance with the same
+     * connection parameters if any, otherwise creates a new connection.
+     */
+    public Connection createConnection(Map<String, Object> connectionParams) throws IOException {
+        String key = getKey(connectionParams);
+        SharedEntry entry = acquire(key);
+        if (entry != null) {
+            log.debug("Sharing connection with {} instances", entry.references);
+            return new SharedConnection(entry);
+        }
+
+        // Connect outside of the lock, this may take a while
+        Connection connection = connectionFactory.createConnection(connectionParams);
+        entry = acquire(key);
+        if (entry != null) {
+            // Another instance connected meanwhile
+            connection.closeConnector();
+            return new SharedConnection(entry);
+        }
+        return register(key, connection);
+    }
+
+    /**
+     * Creates a new connection, even if another instance shares a live connection with the same
+     * connection parameters. The instances using the replaced connection keep it until they
+     * release it, the next instances share the new one.
+     */
+    public Connection createNewConnection(Map<String, Object> connectionParams)
+            throws IOException {
+        String key = getKey(connectionParams);
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        return register(key, connectionFactory.createConnection(connectionParams));
+    }
+
+    /**
+     * Takes a reference on the entry of the given key if its connection is alive. Checking the
+     * connection is a remote call, so it is done outside of the lock.
+     */
+    private SharedEntry acquire(String key) {
+        SharedEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.references++;
+        }
+        if (entry.connection.isAlive()) {
+            return entry;
+        }
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                entries.remove(key);
+            }
+        }
+        release(entry);
+        return null;
+    }
+
+    private Connection register(String key, Connection connection) {
+        SharedEntry entry = new SharedEntry(key, connection);
+        entry.references++;
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return new SharedConnection(entry);
+    }
+
+    /** Returns the number of underlying connections currently open. */
+    int getConnectionCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void release(SharedEntry entry) {
+        synchronized (entries) {
+            entry.references--;
+            if (entry.references > 0) {
+                return;
+            }
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+            }
+        }
+        entry.connection.closeConnector();
+    }
+
+    private static String getKey(Map<String, Object> connectionParams) {
+        Map<String, Object> key = new TreeMap<String, Object>();
+        for (String name : CONNECTION_KEYS) {
+            Object value = connectionParams.get(name);
+            if (value != null) {
+                key.put(name, String.valueOf(value));
+            }
+        }
+        return key.toString();
+    }
+
+    private static class SharedEntry {
+        private final String key;
+        private final Connection connection;
+        private final Map<ObjectName, CachedBeanList<ObjectName>> names =
+                new HashMap<ObjectName, CachedBeanList<ObjectName>>();
+        private final Map<ObjectName, CachedBeanList<ObjectInstance>> instances =
+                new HashMap<ObjectName, CachedBeanList<ObjectInstance>>();
+        private int references;
+
+        SharedEntry(String key, Connection connection) {
+            this.key = key;
+            this.connection = connection;
+        }
+    }
+
+    private static class CachedBeanList<T> {
+        private final Set<T> beans;
+        private final long queryTime;
+
+        CachedBeanList(Set<T> beans, long queryTime) {
+            this.beans = beans;
+            this.queryTime = queryTime;
+        }
+
+        boolean isFresh(long now) {
+            return now - queryTime < BEAN_LIST_TTL_MS;
+        }
+    }
+
+    /** Reference to a shared connection, released when closed. */
+    private class SharedConnection extends Connection {
+        private final SharedEntry entry;
+        private boolean released;
+
+        SharedConnection(SharedEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo(ObjectName beanName)
+                throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                        IOException {
+            return entry.connection.getMBeanInfo(beanName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo(ObjectName beanName, String className)
+                throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                        IOException {
+            return entry.connection.getMBeanInfo(beanName, className);
+        }
+
+        @Override
+        public Set<ObjectName> queryNames(ObjectName name) throws IOException {
+            long now = System.currentTimeMillis();
+            synchronized (entry) {
+                CachedBeanList<ObjectName> cached = entry.names.get(name);
+                if (cached != null && cached.isFresh(now)) {
+                    log.debug("Reusing bean names of scope {} from a shared connection", name);
+                    return new HashSet<ObjectName>(cached.beans);
+                }
+            }
+            Set<ObjectName> beans = entry.connection.queryNames(name);
+            synchronized (entry) {
+                entry.names.put(name, new CachedBeanList<ObjectName>(beans, now));
+            }
+            return new HashSet<ObjectName>(beans);
+        }
+
+        @Override
+        public Set<ObjectInstance> queryMBeans(ObjectName name) throws IOException {
+            long now = System.currentTimeMillis();
+            synchronized (entry) {
+                CachedBeanList<ObjectInstance> cached = entry.instances.get(name);
+                if (cached != null && cached.isFresh(now)) {
+                    log.debug("Reusing beans of scope {} from a shared connection", name);
+                    return new HashSet<ObjectInstance>(cached.beans);
+                }
+            }
+            Set<ObjectInstance> beans = entry.connection.queryMBeans(name);
+            synchronized (entry) {
+                entry.instances.put(name, new CachedBeanList<ObjectInstance>(beans, now));
+            }
+            return new HashSet<ObjectInstance>(beans);
+        }
+
+        @Override
+        protected void createConnection() throws IOException {
+            entry.connection.createConnection();
+        }
+
+        @Override
+        public Object getAttribute(ObjectName objectName, String attributeName)
+                throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
+                        ReflectionException, IOException {
+            return entry.connection.getAttribute(objectName, attributeName);
+        }
+
+        @Override
+        public Map<String, Object> getAttributes(ObjectName objectName, String[] attributeNames)
+                throws InstanceNotFoundException, ReflectionException, IOException {
+            return entry.connection.getAttributes(objectName, attributeNames);
+        }
+
+        @Override
+        public void addNotificationListener(
+                ObjectName name, NotificationListener listener, NotificationFilter filter)
+                throws InstanceNotFoundException, IOException {
+            entry.connection.addNotificationListener(name, listener, filter);
+        }
+
+        @Override
+        public void removeNotificationListener(ObjectName name, NotificationListener listener)
+                throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+            entry.connection.removeNotificationListener(name, listener);
+        }
+
+        /** Releases the shared connection, which is closed once no instance uses it anymore. */
+        @Override
+        public synchronized void closeConnector() {
+            if (!released) {
+                released = true;
+                release(entry);
+            }
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !released && entry.connection.isAlive();
+        }
+    }
+}
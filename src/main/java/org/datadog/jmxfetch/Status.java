@@ -23,6 +23,7 @@ public class Status {
     public static final String STATUS_ERROR = "ERROR";
     private static final String INITIALIZED_CHECKS = "initialized_checks";
     private static final String FAILED_CHECKS = "failed_checks";
+    private static final String RECOVERING_CHECKS = "recovering_checks";
     private static final String API_STATUS_PATH = "agent/jmx/status";
     private Map<String, Object> instanceStats;
     private Map<String, Object> info;
@@ -59,6 +60,7 @@ public class Status {
     private void clearStats() {
         instanceStats.put(INITIALIZED_CHECKS, new HashMap<String, Object>());
         instanceStats.put(FAILED_CHECKS, new HashMap<String, Object>());
+        instanceStats.put(RECOVERING_CHECKS, new HashMap<String, Object>());
     }
 
     private void addInfo() {
@@ -66,6 +68,41 @@ public class Status {
         this.info.put("runtime_version", System.getProperty("java.version"));
     }
 
+    /** Adds the shard collected by this process to the status info. */
+    public void addShardInfo(int shardIndex, int shardCount) {
+        this.info.put("shard_index", shardIndex);
+        this.info.put("shard_count", shardCount);
+    }
+
+    /**
+     * Adds the checks of the status written by a shard worker process. Returns the number of
+     * errors reported by the worker.
+     */
+    @SuppressWarnings("unchecked")
+    public int addShardStatus(Map<String, Object> shardStatus) {
+        Map<String, Object> shardChecks = (Map<String, Object>) shardStatus.get("checks");
+        if (shardChecks != null) {
+            for (Map.Entry<String, Object> entry : shardChecks.entrySet()) {
+                Map<String, Object> checks =
+                        (Map<String, Object>) this.instanceStats.get(entry.getKey());
+                if (checks == null || !(entry.getValue() instanceof Map)) {
+                    continue;
+                }
+                for (Map.Entry<String, Object> check
+                        : ((Map<String, Object>) entry.getValue()).entrySet()) {
+                    List<Object> checkStats = (List<Object>) checks.get(check.getKey());
+                    if (checkStats == null) {
+                        checkStats = new ArrayList<Object>();
+                        checks.put(check.getKey(), checkStats);
+                    }
+                    checkStats.addAll((List<Object>) check.getValue());
+                }
+            }
+        }
+        Object errors = shardStatus.get("errors");
+        return errors instanceof Integer ? (Integer) errors : 0;
+    }
+
     /** Adds instance stats to the status. */
     public void addInstanceStats(
             String checkName,
@@ -129,6 +166,10 @@ public class Status {
                           instanceTelemetryBean.getWildcardDomainQueryCount());
             instStats.put("instance_bean_match_ratio",
                           instanceTelemetryBean.getBeanMatchRatio());
+            instStats.put("instance_max_attribute_latency_ms",
+                          instanceTelemetryBean.getMaxAttributeLatencyMs());
+            instStats.put("instance_slow_attribute_count",
+                          instanceTelemetryBean.getSlowAttributeCount());
         }
         instStats.put("message", message);
         instStats.put("status", status);
@@ -140,6 +181,30 @@ public class Status {
         this.instanceStats.put(key, initializedChecks);
     }
 
+    /** Adds the recovery state of a broken instance to the status. */
+    @SuppressWarnings("unchecked")
+    public void addRecoveryStats(
+            String checkName,
+            String instance,
+            String circuitState,
+            int failedAttempts,
+            long nextAttemptTime) {
+        Map<String, Object> recoveringChecks =
+                (Map<String, Object>) this.instanceStats.get(RECOVERING_CHECKS);
+        List<Map<String, Object>> checkStats =
+                (List<Map<String, Object>>) recoveringChecks.get(checkName);
+        if (checkStats == null) {
+            checkStats = new ArrayList<Map<String, Object>>();
+            recoveringChecks.put(checkName, checkStats);
+        }
+        Map<String, Object> instStats = new HashMap<String, Object>();
+        instStats.put("instance_name", instance);
+        instStats.put("circuit_state", circuitState);
+        instStats.put("failed_attempts", failedAttempts);
+        instStats.put("next_attempt_timestamp", nextAttemptTime);
+        checkStats.add(instStats);
+    }
+
     public void addInitFailedCheck(String checkName, String message, String status) {
         addStats(checkName, null, -1, -1, message, status, FAILED_CHECKS, null);
     }
@@ -18,7 +18,7 @@ public class ConsoleReporter extends Reporter {
     private List<Map<String, Object>> serviceChecks = new ArrayList<Map<String, Object>>();
 
     @Override
-    protected void sendMetricPoint(
+    protected synchronized void sendMetricPoint(
             String metricType, String metricName, double value, String[] tags) {
         String tagString = "[" + StringUtils.join(",", tags) + "]";
         log.info(
@@ -33,7 +33,7 @@ public class ConsoleReporter extends Reporter {
     }
 
     /** Returns list of metrics to report and clears stored metric map. */
-    public List<Map<String, Object>> getMetrics() {
+    public synchronized List<Map<String, Object>> getMetrics() {
         List<Map<String, Object>> returnedMetrics =
                 new ArrayList<Map<String, Object>>(metrics.size());
         for (Map<String, Object> map : metrics) {
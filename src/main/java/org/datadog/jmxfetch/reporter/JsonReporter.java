@@ -17,7 +17,7 @@ public class JsonReporter extends Reporter {
 
     private List<Map<String, Object>> metrics = new ArrayList<Map<String, Object>>();
 
-    protected void sendMetricPoint(
+    protected synchronized void sendMetricPoint(
             String metricType, String metricName, double value, String[] tags) {
         long currentTime = System.currentTimeMillis() / 1000L;
         List<Object> point = new ArrayList<Object>(2);
@@ -37,7 +37,7 @@ public class JsonReporter extends Reporter {
     }
 
     /** Use the service check callback to display the JSON. */
-    public void doSendServiceCheck(
+    public synchronized void doSendServiceCheck(
             String serviceCheckName, String status, String message, String[] tags) {
         log.debug("Displaying JSON output");
         Map<String, Object> sc = new HashMap<String, Object>();
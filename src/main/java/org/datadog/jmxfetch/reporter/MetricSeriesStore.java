@@ -0,0 +1,189 @@
+package org.datadog.jmxfetch.reporter;
+
+import org.datadog.jmxfetch.Metric;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last sample of the rate or counter series of an instance. Each series gets an id the first
+ * time one of its metrics is reported, the id is then kept on the metric so that the following
+ * samples are stored in plain arrays without looking the series up again. Series are keyed by
+ * the alias and tags of their first metric, shared rather than copied into a key string.
+ * Samples are read and written under the lock of the store, as the arrays are replaced when
+ * they grow and saved while metrics are reported.
+ */
+class MetricSeriesStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<SeriesKey, Integer> seriesIds = new HashMap<SeriesKey, Integer>();
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+
+    /** Returns the id of the series of a metric, assigning one if needed. */
+    int getSeriesId(Metric metric) {
+        int seriesId = metric.getSeriesId(this);
+        if (seriesId >= 0) {
+            return seriesId;
+        }
+        // Metrics rebuilt after a bean refresh get back the id of their series
+        seriesId = getSeriesId(new SeriesKey(metric.getAlias(), metric.getTags()));
+        metric.setSeriesId(this, seriesId);
+        return seriesId;
+    }
+
+    private synchronized int getSeriesId(SeriesKey key) {
+        Integer knownId = seriesIds.get(key);
+        if (knownId == null) {
+            knownId = seriesIds.size();
+            seriesIds.put(key, knownId);
+            ensureCapacity(knownId + 1);
+        }
+        return knownId;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        counts = Arrays.copyOf(counts, newCapacity);
+    }
+
+    /** Returns whether a sample was stored for the series. */
+    synchronized boolean hasSample(int seriesId) {
+        return timestamps[seriesId] != 0;
+    }
+
+    synchronized long getTimestamp(int seriesId) {
+        return timestamps[seriesId];
+    }
+
+    synchronized double getValue(int seriesId) {
+        return values[seriesId];
+    }
+
+    synchronized long getCount(int seriesId) {
+        return counts[seriesId];
+    }
+
+    synchronized void setValue(int seriesId, long timestamp, double value) {
+        timestamps[seriesId] = timestamp;
+        values[seriesId] = value;
+    }
+
+    synchronized void setCount(int seriesId, long timestamp, long count) {
+        timestamps[seriesId] = timestamp;
+        counts[seriesId] = count;
+    }
+
+    /** Writes the last sample of the series, with their key. */
+    synchronized void write(DataOutputStream out) throws IOException {
+        int sampleCount = 0;
+        for (Integer seriesId : seriesIds.values()) {
+            if (hasSample(seriesId)) {
+                sampleCount++;
+            }
+        }
+        out.writeInt(sampleCount);
+        for (Map.Entry<SeriesKey, Integer> entry : seriesIds.entrySet()) {
+            int seriesId = entry.getValue();
+            if (!hasSample(seriesId)) {
+                continue;
+            }
+            entry.getKey().write(out);
+            out.writeLong(timestamps[seriesId]);
+            out.writeDouble(values[seriesId]);
+            out.writeLong(counts[seriesId]);
+        }
+    }
+
+    /**
+     * Reads samples written by {@link #write}, skipping the ones taken before the given
+     * timestamp. Returns the number of samples restored.
+     */
+    synchronized int read(DataInputStream in, long minTimestamp) throws IOException {
+        int sampleCount = in.readInt();
+        int restored = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            SeriesKey key = SeriesKey.read(in);
+            long timestamp = in.readLong();
+            double value = in.readDouble();
+            long count = in.readLong();
+            if (timestamp < minTimestamp) {
+                continue;
+            }
+            int seriesId = getSeriesId(key);
+            timestamps[seriesId] = timestamp;
+            values[seriesId] = value;
+            counts[seriesId] = count;
+            restored++;
+        }
+        return restored;
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /** Alias and tags of a series. */
+    private static final class SeriesKey {
+        private final String alias;
+        private final String[] tags;
+        private final int hash;
+
+        SeriesKey(String alias, String[] tags) {
+            this.alias = alias;
+            this.tags = tags != null ? tags : new String[0];
+            this.hash = 31 * alias.hashCode() + Arrays.hashCode(this.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey key = (SeriesKey) other;
+            return hash == key.hash && alias.equals(key.alias) && Arrays.equals(tags, key.tags);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, alias);
+            out.writeInt(tags.length);
+            for (String tag : tags) {
+                writeString(out, tag);
+            }
+        }
+
+        static SeriesKey read(DataInputStream in) throws IOException {
+            String alias = readString(in);
+            String[] tags = new String[in.readInt()];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = readString(in);
+            }
+            return new SeriesKey(alias, tags);
+        }
+    }
+}
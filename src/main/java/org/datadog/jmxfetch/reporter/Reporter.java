@@ -8,63 +8,143 @@ import org.datadog.jmxfetch.Instance;
 import org.datadog.jmxfetch.JmxAttribute;
 import org.datadog.jmxfetch.Metric;
 import org.datadog.jmxfetch.Status;
-
-import java.util.HashMap;
+import org.datadog.jmxfetch.util.AppTelemetry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reports metrics and service checks. The rate and counter state is kept per instance, so that
+ * the metrics of different instances can be sent concurrently, while the metrics of an instance
+ * are sent by one thread at a time.
+ */
 @Slf4j
 public abstract class Reporter {
 
     public static final String VALUE = "value";
+    private static final int SERIES_STATE_VERSION = 2;
 
     private Map<String, Integer> serviceCheckCount;
-    private Map<String, Map<String, Map<String, Object>>> ratesAggregator =
-            new HashMap<String, Map<String, Map<String, Object>>>();
-    private Map<String, Map<String, Long>> countersAggregator =
-            new HashMap<String, Map<String, Long>>();
+    private ConcurrentMap<String, MetricSeriesStore> ratesAggregator =
+            new ConcurrentHashMap<String, MetricSeriesStore>();
+    private ConcurrentMap<String, MetricSeriesStore> countersAggregator =
+            new ConcurrentHashMap<String, MetricSeriesStore>();
+    private ConcurrentMap<String, MetricSeriesStore> gaugesAggregator =
+            new ConcurrentHashMap<String, MetricSeriesStore>();
     protected LoggingErrorHandler handler;
 
     /** Reporter constructor. */
     public Reporter() {
-        this.serviceCheckCount = new HashMap<String, Integer>();
-    }
-
-    String generateId(Metric metric) {
-        String key = metric.getAlias();
-        StringBuilder sb = new StringBuilder(key);
-        for (String tag : metric.getTags()) {
-            sb.append(tag);
-        }
-        return sb.toString();
+        this.serviceCheckCount = new ConcurrentHashMap<String, Integer>();
     }
 
     /** Clears the rate aggregator for the provided instance name. */
     public void clearRatesAggregator(String instanceName) {
-        ratesAggregator.put(instanceName, new HashMap<String, Map<String, Object>>());
+        ratesAggregator.put(instanceName, new MetricSeriesStore());
     }
 
     /** Clears the counter aggregator for the provided instance name.  */
     public void clearCountersAggregator(String instanceName) {
-        countersAggregator.put(instanceName, new HashMap<String, Long>());
+        countersAggregator.put(instanceName, new MetricSeriesStore());
     }
 
-    /** Submits the metrics in the implementing reporter. */
-    public void sendMetrics(List<Metric> metrics, String instanceName, boolean canonicalRate) {
-        Map<String, Map<String, Object>> instanceRatesAggregator;
-        Map<String, Long> instanceCountersAggregator;
+    /**
+     * Saves the last rate and counter samples of all the instances to a file, which is replaced
+     * atomically.
+     */
+    public void saveSeriesState(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+            out.writeInt(SERIES_STATE_VERSION);
+            writeAggregators(out, ratesAggregator);
+            writeAggregators(out, countersAggregator);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        if (ratesAggregator.containsKey(instanceName)) {
-            instanceRatesAggregator = ratesAggregator.get(instanceName);
-        } else {
-            instanceRatesAggregator = new HashMap<String, Map<String, Object>>();
+    /**
+     * Restores the rate and counter samples saved to a file, except the ones older than the given
+     * age in milliseconds. Returns the number of samples restored.
+     */
+    public int loadSeriesState(File file, long maxAge) throws IOException {
+        long minTimestamp = System.currentTimeMillis() - maxAge;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+            if (version != SERIES_STATE_VERSION) {
+                log.warn("Ignoring rate and counter state of unknown version " + version);
+                return 0;
+            }
+            return readAggregators(in, ratesAggregator, minTimestamp)
+                    + readAggregators(in, countersAggregator, minTimestamp);
         }
+    }
 
-        if (countersAggregator.containsKey(instanceName)) {
-            instanceCountersAggregator = countersAggregator.get(instanceName);
-        } else {
-            instanceCountersAggregator = new HashMap<String, Long>();
+    private static void writeAggregators(
+            DataOutputStream out, ConcurrentMap<String, MetricSeriesStore> aggregators)
+            throws IOException {
+        List<Map.Entry<String, MetricSeriesStore>> entries =
+                new ArrayList<Map.Entry<String, MetricSeriesStore>>(aggregators.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<String, MetricSeriesStore> entry : entries) {
+            MetricSeriesStore.writeString(out, entry.getKey());
+            entry.getValue().write(out);
         }
+    }
+
+    private static int readAggregators(
+            DataInputStream in,
+            ConcurrentMap<String, MetricSeriesStore> aggregators,
+            long minTimestamp)
+            throws IOException {
+        int restored = 0;
+        int instanceCount = in.readInt();
+        for (int i = 0; i < instanceCount; i++) {
+            String instanceName = MetricSeriesStore.readString(in);
+            restored += getAggregator(aggregators, instanceName).read(in, minTimestamp);
+        }
+        return restored;
+    }
+
+    /** Clears the last reported gauge values for the provided instance name. */
+    public void clearGaugesAggregator(String instanceName) {
+        gaugesAggregator.remove(instanceName);
+    }
+
+    /** Submits the metrics in the implementing reporter. */
+    public void sendMetrics(List<Metric> metrics, String instanceName, boolean canonicalRate) {
+        sendMetrics(metrics, instanceName, canonicalRate, 0);
+    }
+
+    /**
+     * Submits the metrics in the implementing reporter. With a positive heartbeat, gauges are
+     * only submitted when their value changed since they were last submitted, or when they were
+     * not submitted for the heartbeat duration in milliseconds.
+     */
+    public void sendMetrics(List<Metric> metrics, String instanceName, boolean canonicalRate,
+            long sendOnChangeHeartbeat) {
+        MetricSeriesStore instanceRatesAggregator = getAggregator(ratesAggregator, instanceName);
+        MetricSeriesStore instanceCountersAggregator =
+                getAggregator(countersAggregator, instanceName);
+        MetricSeriesStore instanceGaugesAggregator = sendOnChangeHeartbeat > 0
+                ? getAggregator(gaugesAggregator, instanceName) : null;
 
         int loopCounter = App.getLoopCounter();
 
@@ -85,40 +165,51 @@ public abstract class Reporter {
         }
 
         for (Metric metric : metrics) {
-            Double currentValue = (Double) metric.getValue();
-            if (currentValue.isNaN() || currentValue.isInfinite()) {
+            double currentValue = metric.getValue();
+            if (Double.isNaN(currentValue) || Double.isInfinite(currentValue)) {
                 continue;
             }
 
             String metricName = metric.getAlias();
             String metricType = metric.getMetricType();
-            String[] tags = metric.getTags();
 
             // StatsD doesn't support rate metrics so we need to have our own aggregator to compute
             // rates
             if (metricType.equals("gauge") || metricType.equals("histogram")) {
-                sendMetricPoint(metricType, metricName, currentValue, tags);
+                if (instanceGaugesAggregator != null && metricType.equals("gauge")) {
+                    int seriesId = instanceGaugesAggregator.getSeriesId(metric);
+                    long now = System.currentTimeMillis();
+                    if (instanceGaugesAggregator.hasSample(seriesId)
+                            && instanceGaugesAggregator.getValue(seriesId) == currentValue
+                            && now - instanceGaugesAggregator.getTimestamp(seriesId)
+                                    < sendOnChangeHeartbeat) {
+                        continue;
+                    }
+                    instanceGaugesAggregator.setValue(seriesId, now, currentValue);
+                }
+                sendMetricPoint(metric, metricType, currentValue);
             } else if (metricType.equals("monotonic_count")) {
-                String key = generateId(metric);
-                if (!instanceCountersAggregator.containsKey(key)) {
-                    instanceCountersAggregator.put(key,  currentValue.longValue());
+                int seriesId = instanceCountersAggregator.getSeriesId(metric);
+                long now = System.currentTimeMillis();
+                if (!instanceCountersAggregator.hasSample(seriesId)) {
+                    instanceCountersAggregator.setCount(seriesId, now, (long) currentValue);
                     continue;
                 }
 
-                long oldValue = instanceCountersAggregator.get(key);
-                long delta = currentValue.longValue() - oldValue;
+                long oldValue = instanceCountersAggregator.getCount(seriesId);
+                long delta = (long) currentValue - oldValue;
 
                 if (Double.isNaN(delta) || Double.isInfinite(delta)) {
                     continue;
                 }
 
-                instanceCountersAggregator.put(key, currentValue.longValue());
+                instanceCountersAggregator.setCount(seriesId, now, (long) currentValue);
 
                 if (delta < 0) {
                     log.info("Counter " + metricName + " has been reset - not submitting.");
                     continue;
                 }
-                sendMetricPoint(metricType, metricName, delta, tags);
+                sendMetricPoint(metric, metricType, delta);
 
             } else {
                 // `counter` and `rate` are equivalent and both accepted as valid.
@@ -130,39 +221,45 @@ public abstract class Reporter {
                             + " (this is a DEPRECATED behaviour, use a valid type instead).");
                 }
 
-                String key = generateId(metric);
-                if (!instanceRatesAggregator.containsKey(key)) {
-                    Map<String, Object> rateInfo = new HashMap<String, Object>();
-                    rateInfo.put("ts", System.currentTimeMillis());
-                    rateInfo.put(VALUE, currentValue);
-                    instanceRatesAggregator.put(key, rateInfo);
+                int seriesId = instanceRatesAggregator.getSeriesId(metric);
+                long now = System.currentTimeMillis();
+                if (!instanceRatesAggregator.hasSample(seriesId)) {
+                    instanceRatesAggregator.setValue(seriesId, now, currentValue);
                     continue;
                 }
 
-                long oldTs = (Long) instanceRatesAggregator.get(key).get("ts");
-                double oldValue = (Double) instanceRatesAggregator.get(key).get(VALUE);
+                long oldTs = instanceRatesAggregator.getTimestamp(seriesId);
+                double oldValue = instanceRatesAggregator.getValue(seriesId);
 
-                long now = System.currentTimeMillis();
                 double rate = 1000 * (currentValue - oldValue) / (now - oldTs);
 
                 boolean sane = (!Double.isNaN(rate) && !Double.isInfinite(rate));
                 boolean submit = (rate >= 0 || !canonicalRate);
 
                 if (sane && submit) {
-                    sendMetricPoint(metricType, metricName, rate, tags);
+                    sendMetricPoint(metric, metricType, rate);
                 } else if (sane) {
                     log.info(
                             "Canonical rate option set, and negative rate (counter reset)"
                                     + "not submitting.");
                 }
 
-                instanceRatesAggregator.get(key).put("ts", now);
-                instanceRatesAggregator.get(key).put(VALUE, currentValue);
+                instanceRatesAggregator.setValue(seriesId, now, currentValue);
             }
         }
+    }
 
-        ratesAggregator.put(instanceName, instanceRatesAggregator);
-        countersAggregator.put(instanceName, instanceCountersAggregator);
+    private static MetricSeriesStore getAggregator(
+            ConcurrentMap<String, MetricSeriesStore> aggregators, String instanceName) {
+        MetricSeriesStore aggregator = aggregators.get(instanceName);
+        if (aggregator == null) {
+            aggregator = new MetricSeriesStore();
+            MetricSeriesStore previous = aggregators.putIfAbsent(instanceName, aggregator);
+            if (previous != null) {
+                aggregator = previous;
+            }
+        }
+        return aggregator;
     }
 
     /** Submits service check. */
@@ -173,7 +270,7 @@ public abstract class Reporter {
     }
 
     /** Increments the service check count - for book-keeping purposes. */
-    public void incrementServiceCheckCount(String checkName) {
+    public synchronized void incrementServiceCheckCount(String checkName) {
         int scCount = this.getServiceCheckCount(checkName);
         this.getServiceCheckCountMap().put(checkName, Integer.valueOf(scCount + 1));
     }
@@ -195,6 +292,9 @@ public abstract class Reporter {
         return this.handler;
     }
 
+    /** Reports the counters of the reporter to the jmxfetch telemetry, none by default. */
+    public void updateTelemetry(AppTelemetry appTelemetry) {}
+
     protected ServiceCheck.Status statusToServiceCheckStatus(String status) {
         if (status == Status.STATUS_OK) {
             return ServiceCheck.Status.OK;
@@ -213,6 +313,11 @@ public abstract class Reporter {
         return sc.getStatus();
     }
 
+    /** Sends a point of the given metric, by default with its name and tags. */
+    protected void sendMetricPoint(Metric metric, String metricType, double value) {
+        sendMetricPoint(metricType, metric.getAlias(), value, metric.getTags());
+    }
+
     protected abstract void sendMetricPoint(
             String metricType, String metricName, double value, String[] tags);
 
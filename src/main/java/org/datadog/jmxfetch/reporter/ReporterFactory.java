@@ -30,7 +30,8 @@ public class ReporterFactory {
                         appConfig.getStatsdQueueSize(),
                         appConfig.isStatsdNonBlocking(),
                         appConfig.getStatsdBufferSize(),
-                        appConfig.getSocketTimeout());
+                        appConfig.getSocketTimeout(),
+                        appConfig.isStatsdBatch());
             }
 
             matcher = Pattern.compile("^statsd:unix://(.*)$").matcher(type);
@@ -43,7 +44,8 @@ public class ReporterFactory {
                         appConfig.getStatsdQueueSize(),
                         appConfig.isStatsdNonBlocking(),
                         appConfig.getStatsdBufferSize(),
-                        appConfig.getSocketTimeout());
+                        appConfig.getSocketTimeout(),
+                        appConfig.isStatsdBatch());
             }
         }
         throw new IllegalArgumentException("Invalid reporter type: " + type);
@@ -0,0 +1,306 @@
+package org.datadog.jmxfetch.reporter;
+
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import jnr.unixsocket.UnixDatagramChannel;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.datadog.jmxfetch.Metric;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes metric points to DogStatsD in bulk, without going through the statsd client. The line
+ * of a series is encoded once, apart from its value, and cached on its metric. Points are queued
+ * by the reporting threads to a single sender thread, which appends them to its datagram buffer
+ * and sends it once full or once the queue is empty. Like the statsd client, a full queue drops
+ * points unless blocking. The points, datagrams and bytes sent or dropped are counted by the
+ * writer, as the statsd client does not count them.
+ */
+@Slf4j
+class StatsdBatchWriter implements Runnable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Longest value written: a negative long, or a double in scientific notation
+    private static final int MAX_VALUE_LENGTH = 32;
+    private static final int DEFAULT_UDS_TIMEOUT_MS = 100;
+
+    private final DatagramChannel channel;
+    private final SocketAddress address;
+    private final int maxPacketSize;
+    private final String constantTags;
+    private final StatsDClientErrorHandler handler;
+    private final BlockingQueue<Point> points;
+    private final boolean blocking;
+    private final AtomicLong pointsSent = new AtomicLong();
+    private final AtomicLong pointsDropped = new AtomicLong();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsDropped = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesDropped = new AtomicLong();
+    // Points appended to the datagram buffer, only used by the sender thread
+    private int bufferedPoints;
+
+    StatsdBatchWriter(
+            DatagramChannel channel,
+            SocketAddress address,
+            int maxPacketSize,
+            List<String> constantTags,
+            StatsDClientErrorHandler handler,
+            int queueSize,
+            boolean blocking) {
+        this.channel = channel;
+        this.address = address;
+        this.maxPacketSize = maxPacketSize;
+        this.constantTags = constantTags.isEmpty() ? null : join(constantTags);
+        this.handler = handler;
+        this.points = new ArrayBlockingQueue<Point>(queueSize);
+        this.blocking = blocking;
+    }
+
+    /**
+     * Opens a writer to the DogStatsD server, through its unix socket if the port is 0, and
+     * starts its sender thread.
+     */
+    static StatsdBatchWriter open(
+            String host,
+            int port,
+            int maxPacketSize,
+            int socketBufferSize,
+            int socketTimeout,
+            List<String> constantTags,
+            StatsDClientErrorHandler handler,
+            int queueSize,
+            boolean blocking)
+            throws IOException {
+        DatagramChannel channel;
+        SocketAddress address;
+        if (port == 0) {
+            channel = UnixDatagramChannel.open();
+            address = new UnixSocketAddress(host);
+            channel.setOption(UnixSocketOptions.SO_SNDTIMEO,
+                    socketTimeout != 0 ? socketTimeout : DEFAULT_UDS_TIMEOUT_MS);
+            if (socketBufferSize != 0) {
+                channel.setOption(UnixSocketOptions.SO_SNDBUF, socketBufferSize);
+            }
+        } else {
+            channel = DatagramChannel.open();
+            address = new InetSocketAddress(host, port);
+            if (socketBufferSize != 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+            }
+        }
+        StatsdBatchWriter writer = new StatsdBatchWriter(channel, address, maxPacketSize,
+                constantTags, handler, queueSize, blocking);
+        Thread sender = new Thread(writer, "jmxfetch-statsd-batch-sender");
+        sender.setDaemon(true);
+        sender.start();
+        return writer;
+    }
+
+    /**
+     * Queues a point of the metric to the sender thread. Returns false if the line of the metric
+     * does not fit in a datagram, in which case nothing is queued.
+     */
+    boolean write(Metric metric, String metricType, double value) {
+        EncodedLine line = getLine(metric, metricType);
+        if (line.prefix.length + MAX_VALUE_LENGTH + line.suffix.length > maxPacketSize) {
+            return false;
+        }
+        Point point = new Point(line, value);
+        if (!blocking) {
+            if (!points.offer(point)) {
+                pointsDropped.incrementAndGet();
+            }
+            return true;
+        }
+        try {
+            points.put(point);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pointsDropped.incrementAndGet();
+        }
+        return true;
+    }
+
+    /** Appends the queued points to the datagram buffer, sending it once the queue is empty. */
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(maxPacketSize);
+        try {
+            while (true) {
+                Point point = points.poll();
+                if (point == null) {
+                    send(buffer);
+                    point = points.take();
+                }
+                append(buffer, point);
+            }
+        } catch (InterruptedException e) {
+            send(buffer);
+        }
+    }
+
+    private void append(ByteBuffer buffer, Point point) {
+        EncodedLine line = point.line;
+        if (line.prefix.length + MAX_VALUE_LENGTH + line.suffix.length > buffer.remaining()) {
+            send(buffer);
+        }
+        buffer.put(line.prefix);
+        if (line.integer || isLong(point.value)) {
+            writeLong(buffer, (long) point.value);
+        } else {
+            buffer.put(Double.toString(point.value).getBytes(UTF_8));
+        }
+        buffer.put(line.suffix);
+        bufferedPoints++;
+    }
+
+    private void send(ByteBuffer buffer) {
+        int size = buffer.position();
+        if (size == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            channel.send(buffer, address);
+            pointsSent.addAndGet(bufferedPoints);
+            packetsSent.incrementAndGet();
+            bytesSent.addAndGet(size);
+        } catch (IOException e) {
+            pointsDropped.addAndGet(bufferedPoints);
+            packetsDropped.incrementAndGet();
+            bytesDropped.addAndGet(size);
+            handler.handle(e);
+        } finally {
+            buffer.clear();
+            bufferedPoints = 0;
+        }
+    }
+
+    long getPointsSent() {
+        return pointsSent.get();
+    }
+
+    long getPointsDropped() {
+        return pointsDropped.get();
+    }
+
+    long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    long getPacketsDropped() {
+        return packetsDropped.get();
+    }
+
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    long getBytesDropped() {
+        return bytesDropped.get();
+    }
+
+    private EncodedLine getLine(Metric metric, String metricType) {
+        Object encoding = metric.getEncoding(this);
+        if (encoding instanceof EncodedLine) {
+            return (EncodedLine) encoding;
+        }
+        EncodedLine line = new EncodedLine(metric, metricType, constantTags);
+        metric.setEncoding(this, line);
+        return line;
+    }
+
+    private static boolean isLong(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15;
+    }
+
+    private static void writeLong(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + Math.abs(value % 10)));
+            value /= 10;
+        } while (value != 0);
+        // Digits were written from the least significant one
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+    }
+
+    private static String join(List<String> tags) {
+        StringBuilder sb = new StringBuilder();
+        for (String tag : tags) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(tag);
+        }
+        return sb.toString();
+    }
+
+    private static class Point {
+        private final EncodedLine line;
+        private final double value;
+
+        Point(EncodedLine line, double value) {
+            this.line = line;
+            this.value = value;
+        }
+    }
+
+    /** Line of a series split around its value, "name:" and "|type|#tags\n". */
+    private static class EncodedLine {
+        private final byte[] prefix;
+        private final byte[] suffix;
+        private final boolean integer;
+
+        EncodedLine(Metric metric, String metricType, String constantTags) {
+            String type;
+            if (metricType.equals("monotonic_count")) {
+                type = "c";
+            } else if (metricType.equals("histogram")) {
+                type = "h";
+            } else {
+                type = "g";
+            }
+            StringBuilder sb = new StringBuilder("|").append(type);
+            String[] tags = metric.getTags();
+            if ((tags != null && tags.length > 0) || constantTags != null) {
+                sb.append("|#");
+                if (tags != null) {
+                    for (int i = 0; i < tags.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        sb.append(tags[i]);
+                    }
+                }
+                if (constantTags != null) {
+                    if (tags != null && tags.length > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(constantTags);
+                }
+            }
+            sb.append('\n');
+            this.prefix = (metric.getAlias() + ":").getBytes(UTF_8);
+            this.suffix = sb.toString().getBytes(UTF_8);
+            this.integer = type.equals("c");
+        }
+    }
+}
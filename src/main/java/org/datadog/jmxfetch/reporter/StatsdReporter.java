@@ -1,12 +1,18 @@
 package org.datadog.jmxfetch.reporter;
 
+import com.timgroup.statsd.NonBlockingStatsDClient;
 import com.timgroup.statsd.NonBlockingStatsDClientBuilder;
 import com.timgroup.statsd.ServiceCheck;
 import com.timgroup.statsd.StatsDClient;
 import lombok.extern.slf4j.Slf4j;
 import org.datadog.jmxfetch.Instance;
 import org.datadog.jmxfetch.JmxAttribute;
+import org.datadog.jmxfetch.Metric;
+import org.datadog.jmxfetch.util.AppTelemetry;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /** A reporter class to submit metrics via statsd. */
 @Slf4j
@@ -20,10 +26,24 @@ public class StatsdReporter extends Reporter {
     private boolean nonBlocking;
     private int socketBufferSize;
     private int socketTimeout;
+    private boolean batch;
+    private StatsdBatchWriter batchWriter;
 
     /** Constructor, instantiates statsd reported to provided host and port. */
     public StatsdReporter(String statsdHost, int statsdPort, boolean telemetry, int queueSize,
         boolean nonBlocking, int socketBufferSize, int socketTimeout
+    ) {
+        this(statsdHost, statsdPort, telemetry, queueSize, nonBlocking, socketBufferSize,
+                socketTimeout, false);
+    }
+
+    /**
+     * Constructor, instantiates statsd reported to provided host and port. In batch mode, metric
+     * points are written to DogStatsD in bulk with their lines pre-serialized once per series,
+     * service checks are still sent through the statsd client.
+     */
+    public StatsdReporter(String statsdHost, int statsdPort, boolean telemetry, int queueSize,
+        boolean nonBlocking, int socketBufferSize, int socketTimeout, boolean batch
     ) {
         this.statsdHost = statsdHost;
         this.statsdPort = statsdPort;
@@ -32,6 +52,7 @@ public class StatsdReporter extends Reporter {
         this.nonBlocking = nonBlocking;
         this.socketBufferSize = socketBufferSize;
         this.socketTimeout = socketTimeout;
+        this.batch = batch;
         this.init();
     }
 
@@ -54,6 +75,7 @@ public class StatsdReporter extends Reporter {
                 .entityID(entityId);
 
         String extraInitLog = "";
+        int maxPacketSize = NonBlockingStatsDClient.DEFAULT_MAX_PACKET_SIZE_BYTES;
         if (this.statsdPort == 0) {
             int packetSize = defaultUdsDatagramSize;
 
@@ -74,6 +96,7 @@ public class StatsdReporter extends Reporter {
 
             extraInitLog += "maxPacketSize=" + packetSize;
             builder.maxPacketSizeBytes(packetSize);
+            maxPacketSize = packetSize;
             // Disable origin detection
             builder.constantTags("dd.internal.card:none");
         }
@@ -86,12 +109,61 @@ public class StatsdReporter extends Reporter {
             extraInitLog += " socketTimeout=" + this.socketTimeout;
             builder.timeout(this.socketTimeout);
         }
+        if (this.batch) {
+            extraInitLog += " batch=true";
+        }
         log.info("Initializing Statsd reporter with parameters host={} port={} "
                         + "telemetry={} queueSize={} entityId={} blocking={} "
                         + "{}",
                 this.statsdHost, this.statsdPort, this.telemetry, this.queueSize, entityId,
                 !this.nonBlocking, extraInitLog);
         statsDClient = builder.build();
+        if (this.batch) {
+            initBatchWriter(entityId, maxPacketSize);
+        }
+    }
+
+    private void initBatchWriter(String entityId, int maxPacketSize) {
+        // Same constant tags as the ones added by the statsd client
+        List<String> constantTags = new ArrayList<String>();
+        if (this.statsdPort == 0) {
+            constantTags.add("dd.internal.card:none");
+        }
+        if (entityId == null) {
+            entityId = System.getenv("DD_ENTITY_ID");
+        }
+        if (entityId != null && !entityId.trim().isEmpty()) {
+            constantTags.add("dd.internal.entity_id:" + entityId);
+        }
+        try {
+            batchWriter = StatsdBatchWriter.open(this.statsdHost, this.statsdPort, maxPacketSize,
+                    this.socketBufferSize, this.socketTimeout, constantTags, handler,
+                    this.queueSize, !this.nonBlocking);
+        } catch (IOException e) {
+            log.warn("Unable to open the statsd batch writer, metrics will be sent through "
+                    + "the statsd client", e);
+        }
+    }
+
+    /** Reports the points and datagrams sent by the batch writer. */
+    @Override
+    public void updateTelemetry(AppTelemetry appTelemetry) {
+        if (batchWriter == null) {
+            return;
+        }
+        appTelemetry.setStatsdBatchPointsSent(batchWriter.getPointsSent());
+        appTelemetry.setStatsdBatchPointsDropped(batchWriter.getPointsDropped());
+        appTelemetry.setStatsdBatchPacketsSent(batchWriter.getPacketsSent());
+        appTelemetry.setStatsdBatchPacketsDropped(batchWriter.getPacketsDropped());
+        appTelemetry.setStatsdBatchBytesSent(batchWriter.getBytesSent());
+        appTelemetry.setStatsdBatchBytesDropped(batchWriter.getBytesDropped());
+    }
+
+    @Override
+    protected void sendMetricPoint(Metric metric, String metricType, double value) {
+        if (batchWriter == null || !batchWriter.write(metric, metricType, value)) {
+            super.sendMetricPoint(metric, metricType, value);
+        }
     }
 
     protected void sendMetricPoint(
@@ -150,4 +222,8 @@ public class StatsdReporter extends Reporter {
     public int getQueueSize() {
         return queueSize;
     }
+
+    public boolean isBatch() {
+        return batch;
+    }
 }
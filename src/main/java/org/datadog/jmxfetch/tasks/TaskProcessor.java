@@ -7,8 +7,12 @@ import org.datadog.jmxfetch.InstanceTask;
 import org.datadog.jmxfetch.reporter.Reporter;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -40,6 +44,10 @@ public class TaskProcessor {
             // assumes we are in embedded mode and tasks will process by the calling thread
             return true;
         }
+        if (!(threadPoolExecutor instanceof ThreadPoolExecutor)) {
+            // a thread per task executor never runs out of threads
+            return !threadPoolExecutor.isShutdown();
+        }
         ThreadPoolExecutor tpe = (ThreadPoolExecutor) threadPoolExecutor;
         return !tpe.isTerminated() && !(tpe.getMaximumPoolSize() == tpe.getActiveCount());
     }
@@ -83,6 +91,84 @@ public class TaskProcessor {
         return statuses;
     }
 
+    /**
+     * Processes the list of InstanceTasks within a set timeout deadline, handing the status of
+     * each task to the listener as soon as the task completes rather than once all of them did.
+     * The listener is always invoked by the calling thread.
+     * */
+    public <T> void processTasksAsCompleted(
+            List<InstanceTask<T>> tasks, int timeout, TimeUnit timeUnit, TaskMethod<T> processor,
+            TaskStatusListener<T> listener)
+            throws Exception {
+        Map<Future<T>, InstanceTask<T>> pending = new LinkedHashMap<Future<T>, InstanceTask<T>>();
+        try {
+            if (threadPoolExecutor != null) {
+                CompletionService<T> completionService =
+                        new ExecutorCompletionService<T>(threadPoolExecutor);
+                long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+                for (InstanceTask<T> task : tasks) {
+                    pending.put(completionService.submit(task), task);
+                }
+                while (!pending.isEmpty()) {
+                    long wait = deadline - System.nanoTime();
+                    Future<T> future =
+                            wait > 0 ? completionService.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (future == null) {
+                        break;
+                    }
+                    notifyStatus(pending.remove(future), future, processor, listener);
+                }
+                // Tasks still pending have timed out
+                for (Map.Entry<Future<T>, InstanceTask<T>> entry : pending.entrySet()) {
+                    entry.getKey().cancel(true);
+                }
+                for (Map.Entry<Future<T>, InstanceTask<T>> entry : pending.entrySet()) {
+                    notifyStatus(entry.getValue(), entry.getKey(), processor, listener);
+                }
+                pending.clear();
+            } else {
+                for (InstanceTask<T> task : tasks) {
+                    T result = task.call();
+                    listener.onStatus(task, processor.invoke(task.getInstance(),
+                            new SimpleFuture<T>(result), reporter));
+                }
+            }
+
+        } catch (Exception e) {
+            for (Future<T> future : pending.keySet()) {
+                future.cancel(true);
+            }
+            log.warn("JMXFetch internal TaskProcessor error invoking concurrent tasks: ", e);
+            throw e;
+        }
+    }
+
+    private <T> void notifyStatus(
+            InstanceTask<T> task, Future<T> future, TaskMethod<T> processor,
+            TaskStatusListener<T> listener) {
+        Instance instance = task.getInstance();
+        TaskStatusHandler status;
+        try {
+            status = processor.invoke(instance, future, reporter);
+        } catch (Exception e) {
+            log.warn("There was an error processing concurrent instance: " + instance, e);
+            status = new TaskStatusHandler(e);
+        }
+        listener.onStatus(task, status);
+    }
+
+    /**
+     * Runs a task asynchronously on the executor service, or right away by the calling thread
+     * in embedded mode.
+     * */
+    public void execute(Runnable task) {
+        if (threadPoolExecutor != null) {
+            threadPoolExecutor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
     /**
      * Stops the excutor service.
      * */
@@ -0,0 +1,7 @@
+package org.datadog.jmxfetch.tasks;
+
+import org.datadog.jmxfetch.InstanceTask;
+
+public interface TaskStatusListener<T> {
+    void onStatus(InstanceTask<T> task, TaskStatusHandler status);
+}
@@ -1,18 +1,31 @@
 package org.datadog.jmxfetch.util;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Jmxfetch telemetry JMX MBean. */
 public class AppTelemetry implements AppTelemetryMBean {
     private AtomicInteger runningInstanceCount;
     private AtomicInteger brokenInstanceCount;
     private AtomicInteger brokenInstanceEventCount;
+    private AtomicLong statsdBatchPointsSent;
+    private AtomicLong statsdBatchPointsDropped;
+    private AtomicLong statsdBatchPacketsSent;
+    private AtomicLong statsdBatchPacketsDropped;
+    private AtomicLong statsdBatchBytesSent;
+    private AtomicLong statsdBatchBytesDropped;
 
     /** Jmxfetch telemetry bean constructor. */
     public AppTelemetry() {
         runningInstanceCount = new AtomicInteger(0);
         brokenInstanceCount = new AtomicInteger(0);
         brokenInstanceEventCount = new AtomicInteger(0);
+        statsdBatchPointsSent = new AtomicLong(0);
+        statsdBatchPointsDropped = new AtomicLong(0);
+        statsdBatchPacketsSent = new AtomicLong(0);
+        statsdBatchPacketsDropped = new AtomicLong(0);
+        statsdBatchBytesSent = new AtomicLong(0);
+        statsdBatchBytesDropped = new AtomicLong(0);
     }
 
     public int getRunningInstanceCount() {
@@ -27,6 +40,30 @@ public class AppTelemetry implements AppTelemetryMBean {
         return brokenInstanceEventCount.get();
     }
 
+    public long getStatsdBatchPointsSent() {
+        return statsdBatchPointsSent.get();
+    }
+
+    public long getStatsdBatchPointsDropped() {
+        return statsdBatchPointsDropped.get();
+    }
+
+    public long getStatsdBatchPacketsSent() {
+        return statsdBatchPacketsSent.get();
+    }
+
+    public long getStatsdBatchPacketsDropped() {
+        return statsdBatchPacketsDropped.get();
+    }
+
+    public long getStatsdBatchBytesSent() {
+        return statsdBatchBytesSent.get();
+    }
+
+    public long getStatsdBatchBytesDropped() {
+        return statsdBatchBytesDropped.get();
+    }
+
     public void setRunningInstanceCount(int count) {
         this.runningInstanceCount.set(count);
     }
@@ -38,4 +75,28 @@ public class AppTelemetry implements AppTelemetryMBean {
     public void incrementBrokenInstanceEventCount() {
         brokenInstanceEventCount.incrementAndGet();
     }
+
+    public void setStatsdBatchPointsSent(long count) {
+        statsdBatchPointsSent.set(count);
+    }
+
+    public void setStatsdBatchPointsDropped(long count) {
+        statsdBatchPointsDropped.set(count);
+    }
+
+    public void setStatsdBatchPacketsSent(long count) {
+        statsdBatchPacketsSent.set(count);
+    }
+
+    public void setStatsdBatchPacketsDropped(long count) {
+        statsdBatchPacketsDropped.set(count);
+    }
+
+    public void setStatsdBatchBytesSent(long count) {
+        statsdBatchBytesSent.set(count);
+    }
+
+    public void setStatsdBatchBytesDropped(long count) {
+        statsdBatchBytesDropped.set(count);
+    }
 }
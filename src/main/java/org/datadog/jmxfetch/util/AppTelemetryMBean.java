@@ -8,4 +8,16 @@ public interface AppTelemetryMBean {
 
     int getBrokenInstanceEventCount();
 
+    long getStatsdBatchPointsSent();
+
+    long getStatsdBatchPointsDropped();
+
+    long getStatsdBatchPacketsSent();
+
+    long getStatsdBatchPacketsDropped();
+
+    long getStatsdBatchBytesSent();
+
+    long getStatsdBatchBytesDropped();
+
 }
@@ -3,12 +3,17 @@ package org.datadog.jmxfetch.util;
 
 /** Jmxfetch telemetry JMX MBean. */
 public class InstanceTelemetry implements InstanceTelemetryMBean {
+    /** Upper bounds in milliseconds of the attribute latency histogram buckets but the last. */
+    public static final long[] ATTRIBUTE_LATENCY_BOUNDS_MS = {1, 10, 100, 1000};
 
     private int beansFetched;
     private int topLevelAttributeCount;
     private int metricCount;
     private int wildcardDomainQueryCount;
     private double beanMatchRatio;
+    private long[] attributeLatencyHistogram;
+    private long maxAttributeLatencyMs;
+    private int slowAttributeCount;
 
     /** Jmxfetch telemetry bean constructor. */
     public InstanceTelemetry() {
@@ -17,6 +22,19 @@ public class InstanceTelemetry implements InstanceTelemetryMBean {
         metricCount = 0;
         wildcardDomainQueryCount = 0;
         beanMatchRatio = 0.0;
+        attributeLatencyHistogram = new long[ATTRIBUTE_LATENCY_BOUNDS_MS.length + 1];
+        maxAttributeLatencyMs = 0;
+        slowAttributeCount = 0;
+    }
+
+    /** Returns the index of the attribute latency histogram bucket of the given latency. */
+    public static int getAttributeLatencyBucket(long latencyMs) {
+        int bucket = 0;
+        while (bucket < ATTRIBUTE_LATENCY_BOUNDS_MS.length
+                && latencyMs >= ATTRIBUTE_LATENCY_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        return bucket;
     }
 
     public int getBeansFetched() {
@@ -39,6 +57,18 @@ public class InstanceTelemetry implements InstanceTelemetryMBean {
         return beanMatchRatio;
     }
 
+    public long[] getAttributeLatencyHistogram() {
+        return attributeLatencyHistogram;
+    }
+
+    public long getMaxAttributeLatencyMs() {
+        return maxAttributeLatencyMs;
+    }
+
+    public int getSlowAttributeCount() {
+        return slowAttributeCount;
+    }
+
     public void setBeansFetched(int count) {
         beansFetched = count;
     }
@@ -59,4 +89,16 @@ public class InstanceTelemetry implements InstanceTelemetryMBean {
         beanMatchRatio = ratio;
     }
 
+    public void setAttributeLatencyHistogram(long[] histogram) {
+        attributeLatencyHistogram = histogram;
+    }
+
+    public void setMaxAttributeLatencyMs(long latencyMs) {
+        maxAttributeLatencyMs = latencyMs;
+    }
+
+    public void setSlowAttributeCount(int count) {
+        slowAttributeCount = count;
+    }
+
 }
@@ -12,4 +12,10 @@ public interface InstanceTelemetryMBean {
 
     double getBeanMatchRatio();
 
+    long[] getAttributeLatencyHistogram();
+
+    long getMaxAttributeLatencyMs();
+
+    int getSlowAttributeCount();
+
 }
@@ -284,11 +284,15 @@ public class SimpleTestJavaApp implements SimpleTestJavaAppMBean {
     }
 
     private CompositeData buildCompositeData(Integer i) {
+        return buildCompositeData(i, "tata");
+    }
+
+    private CompositeData buildCompositeData(Integer i, String toto) {
         try {
             return new CompositeDataSupport(
                     compositetype,
                     new String[] {"foo", "bar", "toto"},
-                    new Object[] {i.toString(), i, "tata"});
+                    new Object[] {i.toString(), i, toto});
         } catch (OpenDataException e) {
             return null;
         }
@@ -301,6 +305,14 @@ public class SimpleTestJavaApp implements SimpleTestJavaAppMBean {
         }
     }
 
+    /** Replaces the rows of the table with rows having the given value of "toto". */
+    public void populateTabularData(int count, String toto) {
+        tabulardata.clear();
+        for (Integer i = 1; i <= count; i++) {
+            tabulardata.put(buildCompositeData(i, toto));
+        }
+    }
+
     public TabularData getTabulardata() {
         return tabulardata;
     }
@@ -35,14 +35,19 @@ public class StatusTest {
         int fakeAttributeCount = 55;
         int fakeWildcardDomainQueryCount = 9;
         double fakeBeanMatchRatio = .4;
+        long fakeMaxAttributeLatencyMs = 1200;
+        int fakeSlowAttributeCount = 2;
 
         instance.setBeansFetched(fakeBeansFetched);
         instance.setMetricCount(fakeMetricCount);
         instance.setTopLevelAttributeCount(fakeAttributeCount);
         instance.setWildcardDomainQueryCount(fakeWildcardDomainQueryCount);
         instance.setBeanMatchRatio(fakeBeanMatchRatio);
+        instance.setMaxAttributeLatencyMs(fakeMaxAttributeLatencyMs);
+        instance.setSlowAttributeCount(fakeSlowAttributeCount);
 
         status.addInstanceStats("fake_check", "fake_instance", 10, 3, "fake_message", Status.STATUS_OK, instance);
+        status.addRecoveryStats("fake_check", "fake_broken_instance", "open", 2, 1234L);
         status.flush();
 
         Yaml yaml = new Yaml();
@@ -61,7 +66,42 @@ public class StatusTest {
         assertEquals(fakeMetricCount, stats.get("instance_metric_count"));
         assertEquals(fakeWildcardDomainQueryCount, stats.get("instance_wildcard_domain_query_count"));
         assertEquals(fakeBeanMatchRatio, stats.get("instance_bean_match_ratio"));
+        assertEquals(fakeMaxAttributeLatencyMs, ((Number) stats.get("instance_max_attribute_latency_ms")).longValue());
+        assertEquals(fakeSlowAttributeCount, stats.get("instance_slow_attribute_count"));
         assertEquals("fake_message", stats.get("message"));
         assertEquals(Status.STATUS_OK, stats.get("status"));
+
+        HashMap recoveringChecks = (HashMap) checks.get("recovering_checks");
+        Map<String, Object> recoveryStats =
+                ((List<Map<String, Object>>) recoveringChecks.get("fake_check")).get(0);
+        assertEquals("fake_broken_instance", recoveryStats.get("instance_name"));
+        assertEquals("open", recoveryStats.get("circuit_state"));
+        assertEquals(2, recoveryStats.get("failed_attempts"));
+        assertEquals(1234L, ((Number) recoveryStats.get("next_attempt_timestamp")).longValue());
+    }
+
+    @Test
+    public void TestShardStatus() throws IOException {
+        File shardFile = folder.newFile("shard.yaml");
+        Status shardStatus = new Status(shardFile.getAbsolutePath());
+        shardStatus.addShardInfo(1, 2);
+        shardStatus.addInstanceStats("fake_check", "fake_shard_instance", 5, 1, null, Status.STATUS_OK, null);
+        shardStatus.addErrorStats(3);
+        shardStatus.flush();
+
+        File tempFile = folder.newFile("status.yaml");
+        Status status = new Status(tempFile.getAbsolutePath());
+        status.addInstanceStats("fake_check", "fake_instance", 10, 3, null, Status.STATUS_OK, null);
+        int errors = status.addShardStatus(
+                (Map<String, Object>) new Yaml().load(new FileInputStream(shardFile)));
+        assertEquals(3, errors);
+        status.flush();
+
+        HashMap yamlMap = new Yaml().load(new FileInputStream(tempFile));
+        HashMap checks = (HashMap) yamlMap.get("checks");
+        HashMap initializedChecks = (HashMap) checks.get("initialized_checks");
+        List<Map<String, Object>> fakeCheck = (List<Map<String, Object>>) initializedChecks.get("fake_check");
+        assertEquals(2, fakeCheck.size());
+        assertEquals("fake_shard_instance", fakeCheck.get(1).get("instance_name"));
     }
-}
\ No newline at end of file
+}
@@ -5,13 +5,18 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import com.beust.jcommander.JCommander;
+import org.datadog.jmxfetch.reporter.ConsoleReporter;
 import org.datadog.jmxfetch.util.AppTelemetry;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.management.ObjectName;
 
@@ -482,6 +487,148 @@ public class TestApp extends TestCommon {
         assertEquals(14, metrics.size());
     }
 
+    @Test
+    public void testInstanceScheduling() throws Exception {
+        // We expose a few metrics through JMX
+        SimpleTestJavaApp testApp = new SimpleTestJavaApp();
+        registerMBean(testApp, "org.datadog.jmxfetch.includeme:type=AType");
+        registerMBean(testApp, "org.datadog.jmxfetch.excludeme:type=AnotherType");
+
+        when(appConfig.isInstanceScheduling()).thenReturn(true);
+        when(appConfig.getCheckPeriod()).thenReturn(1000);
+        initApplication("jmx_domain_exclude.yaml");
+
+        // The instance is collected once within the check period
+        app.doScheduledIteration(System.currentTimeMillis());
+        List<Map<String, Object>> metrics =
+                ((ConsoleReporter) appConfig.getReporter()).getMetrics();
+
+        assertEquals(14, metrics.size());
+        assertEquals(1, app.getInstances().size());
+    }
+
+    @Test
+    public void testConcurrentReporting() throws Exception {
+        SimpleTestJavaApp testApp = new SimpleTestJavaApp();
+        registerMBean(testApp, "org.datadog.jmxfetch.includeme:type=AType");
+        registerMBean(testApp, "org.datadog.jmxfetch.excludeme:type=AnotherType");
+
+        when(appConfig.isConcurrentReporting()).thenReturn(true);
+        initApplication("jmx_domain_exclude.yaml");
+
+        // Metrics are reported by the collection tasks, and only once
+        run();
+        List<Map<String, Object>> metrics = getMetrics();
+        assertEquals(14, metrics.size());
+        assertEquals(1, app.getInstances().size());
+    }
+
+    @Test
+    public void testSendOnChange() throws Exception {
+        SimpleTestJavaApp testApp = new SimpleTestJavaApp();
+        registerMBean(testApp, "org.datadog.jmxfetch.test:type=SimpleTestJavaApp");
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        initApplicationWithYamlLines(
+                "init_config:",
+                "  send_on_change: true",
+                "instances:",
+                "  - jvm_direct: true",
+                "    name: jmx_test_instance",
+                "    collect_default_jvm_metrics: false",
+                "    conf:",
+                "      - include:",
+                "          domain: org.datadog.jmxfetch.test",
+                "          attribute:",
+                "            ShouldBe100:",
+                "              metric_type: gauge",
+                "              alias: this.is.100",
+                "            ShouldBeCounter:",
+                "              metric_type: monotonic_count",
+                "              alias: test.counter");
+
+        run();
+        List<Map<String, Object>> metrics = getMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals("this.is.100", metrics.get(0).get("name"));
+
+        // The unchanged gauge is not reported again before the heartbeat
+        testApp.incrementCounter(5);
+        run();
+        metrics = getMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals("test.counter", metrics.get(0).get("name"));
+        assertEquals(5.0, metrics.get(0).get("value"));
+    }
+
+    @Test
+    public void testShardedInstances() throws Exception {
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        when(appConfig.getShardCount()).thenReturn(3);
+        when(appConfig.getShardIndex()).thenReturn(1);
+        List<String> yamlLines = new ArrayList<String>();
+        yamlLines.add("init_config:");
+        yamlLines.add("instances:");
+        Set<String> expectedNames = new HashSet<String>();
+        for (int i = 0; i < 12; i++) {
+            String name = "jmx_test_instance_" + i;
+            yamlLines.add("  - jvm_direct: true");
+            yamlLines.add("    name: " + name);
+            yamlLines.add("    collect_default_jvm_metrics: false");
+            yamlLines.add("    conf:");
+            yamlLines.add("      - include:");
+            yamlLines.add("          domain: org.datadog.jmxfetch.test");
+            if (ShardSupervisor.getShard(name, 3) == 1) {
+                expectedNames.add(name);
+            }
+        }
+        initApplicationWithYamlLines(yamlLines.toArray(new String[yamlLines.size()]));
+
+        // Only the instances of the shard are collected
+        Set<String> names = new HashSet<String>();
+        for (Instance instance : app.getInstances()) {
+            names.add(instance.getName());
+        }
+        assertEquals(expectedNames, names);
+        assertTrue(names.size() > 0 && names.size() < 12);
+
+        // Adding a shard only moves instances to the new shard
+        for (int i = 0; i < 100; i++) {
+            String name = "instance_" + i;
+            int shard = ShardSupervisor.getShard(name, 4);
+            assertTrue(shard == 3 || shard == ShardSupervisor.getShard(name, 3));
+        }
+    }
+
+    @Test
+    public void testShardWorkerArgs() {
+        String[] args = {"--reporter", "statsd:localhost:8125", "-s", "/tmp/status.yaml",
+            "--log_location", "/tmp/jmxfetch.log", "--shard_count", "2", "collect"};
+        assertEquals(
+                Arrays.asList("--reporter", "statsd:localhost:8125", "--shard_count", "2",
+                        "collect", "--shard_index", "1", "--status_location", "/tmp/shard-1.yaml",
+                        "--log_location", "/tmp/jmxfetch.log.shard-1"),
+                ShardSupervisor.getWorkerArgs(args, 1, "/tmp/shard-1.yaml", "/tmp/jmxfetch.log"));
+    }
+
+    @Test
+    public void testShardingWithAutoDiscoveryPipe() {
+        // Each worker would read configs of other shards from the pipe, so neither one starts
+        for (int i = 0; i < 2; i++) {
+            AppConfig workerConfig = AppConfig.builder().build();
+            new JCommander(workerConfig, "--reporter", "console", "--ad_enabled",
+                    "--shard_count", "2", "--shard_index", String.valueOf(i), "collect");
+            assertEquals(1, new App(workerConfig).run());
+        }
+
+        // Nor does the supervisor start them
+        String[] args = {"--reporter", "console", "--ad_enabled", "--shard_count", "2",
+            "collect"};
+        AppConfig supervisorConfig = AppConfig.builder().build();
+        new JCommander(supervisorConfig, args);
+        assertTrue(supervisorConfig.isShardSupervisor());
+        assertEquals(1, new ShardSupervisor(supervisorConfig, args).run());
+    }
+
     @Test
     public void testDomainRegex() throws Exception {
         // We expose a few metrics through JMX
@@ -1082,6 +1229,27 @@ public class TestApp extends TestCommon {
         assertCoverage();
     }
 
+    /** Only collecting runs save the rate and counter state when stopping. */
+    @Test
+    public void testListActionDoesNotSaveSeriesState() throws Exception {
+        File file = File.createTempFile("jmxfetch_series_state", "");
+        file.delete();
+        when(appConfig.isPersistSeriesState()).thenReturn(true);
+        when(appConfig.getSeriesStateFile()).thenReturn(file.getPath());
+        when(appConfig.getAction()).thenReturn(AppConfig.ACTION_LIST_EVERYTHING);
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=SimpleTestJavaApp");
+        initApplication("jmx_counter_rate.yaml");
+
+        app.stop();
+        assertFalse(file.exists());
+
+        when(appConfig.getAction()).thenReturn(AppConfig.ACTION_COLLECT);
+        app.stop();
+        assertTrue(file.exists());
+        when(appConfig.isPersistSeriesState()).thenReturn(false);
+        file.delete();
+    }
+
     /**
      * Test counter and rate.
      */
@@ -1296,6 +1464,60 @@ public class TestApp extends TestCommon {
         assertCoverage();
     }
 
+    @Test
+    public void testTabularDataAggregated() throws Exception {
+        SimpleTestJavaApp testApp = new SimpleTestJavaApp();
+        testApp.populateTabularData(5);
+        registerMBean(testApp, "org.datadog.jmxfetch.test:type=SimpleTestJavaApp");
+
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        initApplication("jmx_tabular_data_aggregated.yaml");
+
+        run();
+        List<Map<String, Object>> metrics = getMetrics();
+
+        // 13 metrics from java.lang + 1 series per aggregated attribute, instead of 1 per row
+        assertEquals(15, metrics.size());
+
+        List<String> tags = Arrays.asList(
+                "instance:jmx_test_instance",
+                "jmx_domain:org.datadog.jmxfetch.test",
+                "type:SimpleTestJavaApp",
+                "newTag:test");
+        List<String> groupTags = new ArrayList<String>(tags);
+        groupTags.add("toto:tata");
+
+        // Rows are grouped by the "toto" tag only, the "foo" tag of each row is dropped
+        assertMetric("multiattr.bar_sum", 15.0, groupTags, -1);
+        assertMetric("multiattr.foo_count", 5.0, tags, -1);
+        assertCoverage();
+
+        // Groups are aggregated again from scratch on the next collection
+        run();
+        assertEquals(15, getMetrics().size());
+        assertMetric("multiattr.bar_sum", 15.0, groupTags, -1);
+        assertMetric("multiattr.foo_count", 5.0, tags, -1);
+        assertCoverage();
+
+        // Rows moving to another group leave the previous one empty, which is dropped, and
+        // created again once rows come back to it
+        List<String> otherGroupTags = new ArrayList<String>(tags);
+        otherGroupTags.add("toto:titi");
+        testApp.populateTabularData(5, "titi");
+        run();
+        assertEquals(15, getMetrics().size());
+        assertMetric("multiattr.bar_sum", 15.0, otherGroupTags, -1);
+        assertMetric("multiattr.foo_count", 5.0, tags, -1);
+        assertCoverage();
+
+        testApp.populateTabularData(5, "tata");
+        run();
+        assertEquals(15, getMetrics().size());
+        assertMetric("multiattr.bar_sum", 15.0, groupTags, -1);
+        assertMetric("multiattr.foo_count", 5.0, tags, -1);
+        assertCoverage();
+    }
+
     @Test
     public void testJeeStatistics() throws Exception {
         // We expose a few metrics through JMX
@@ -316,4 +316,45 @@ public class TestConfiguration {
         assertTrue(scopeStr.contains("type=someType"));
         assertTrue(scopeStr.contains("param=someParam"));
     }
+
+    private static Configuration newConfiguration(
+            Map<String, Object> include, Map<String, Object> exclude) {
+        Map<String, Object> conf = new HashMap<String, Object>();
+        conf.put("include", include);
+        conf.put("exclude", exclude);
+        return new Configuration(conf);
+    }
+
+    /** Candidates are filtered by domain and class name and keep the configuration order. */
+    @Test
+    public void testConfigurationMatcherCandidates() {
+        Map<String, Object> byDomain = new HashMap<String, Object>();
+        byDomain.put("domain", "kafka.server");
+        Map<String, Object> byDomainRegex = new HashMap<String, Object>();
+        byDomainRegex.put("domain_regex", "kafka\\..*");
+        Map<String, Object> byClassName = new HashMap<String, Object>();
+        byClassName.put("class", "kafka.Gauge");
+        Map<String, Object> excludeDomain = new HashMap<String, Object>();
+        excludeDomain.put("domain", "kafka.network");
+
+        Configuration domainConf = newConfiguration(byDomain, null);
+        Configuration regexConf = newConfiguration(byDomainRegex, excludeDomain);
+        Configuration classConf = newConfiguration(byClassName, null);
+        Configuration otherConf = newConfiguration(null, null);
+        ConfigurationMatcher matcher = new ConfigurationMatcher(
+                Arrays.asList(domainConf, regexConf, classConf, otherConf));
+
+        assertEquals(
+                Arrays.asList(domainConf, regexConf, classConf, otherConf),
+                matcher.getCandidates("kafka.server", "kafka.Gauge"));
+        assertEquals(
+                Arrays.asList(domainConf, regexConf, otherConf),
+                matcher.getCandidates("kafka.server", "kafka.Meter"));
+        assertEquals(
+                Arrays.asList(classConf, otherConf),
+                matcher.getCandidates("kafka.network", "kafka.Gauge"));
+        assertEquals(
+                Arrays.asList(otherConf),
+                matcher.getCandidates("java.lang", "sun.management.MemoryImpl"));
+    }
 }
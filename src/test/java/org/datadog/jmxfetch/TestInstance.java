@@ -2,17 +2,35 @@ package org.datadog.jmxfetch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.StandardMBean;
 
 import org.junit.Test;
 
@@ -262,4 +280,541 @@ public class TestInstance extends TestCommon {
         // 17 = 13 metrics from java.lang + 2 iteration=one + 2 iteration=two
         assertEquals(17, metrics.size());
     }
+
+    /** Makes the instances connect through the given connection. */
+    private void useConnection(final Connection connection) {
+        useConnectionFactory(new ConnectionFactory() {
+            @Override
+            public Connection createConnection(Map<String, Object> connectionParams) {
+                return connection;
+            }
+        });
+    }
+
+    /** Makes the instances connect through the given factory. */
+    private void useConnectionFactory(ConnectionFactory factory) {
+        when(appConfig.getConnectionFactory()).thenReturn(factory);
+    }
+
+    /** Connection counting the calls made to fetch attribute values. */
+    static class CountingConnection extends JvmDirectConnection {
+        int singleFetches = 0;
+        int bulkFetches = 0;
+        int beanInfoFetches = 0;
+        int beanQueries = 0;
+        final Set<String> beanInfoThreads = Collections.synchronizedSet(new HashSet<String>());
+
+        CountingConnection() throws IOException {
+            super();
+        }
+
+        @Override
+        public Object getAttribute(ObjectName objectName, String attributeName)
+                throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
+                        ReflectionException, IOException {
+            singleFetches++;
+            return super.getAttribute(objectName, attributeName);
+        }
+
+        @Override
+        public Map<String, Object> getAttributes(ObjectName objectName, String[] attributeNames)
+                throws InstanceNotFoundException, ReflectionException, IOException {
+            bulkFetches++;
+            return super.getAttributes(objectName, attributeNames);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo(ObjectName beanName)
+                throws InstanceNotFoundException, IntrospectionException, ReflectionException,
+                        IOException {
+            beanInfoFetches++;
+            beanInfoThreads.add(Thread.currentThread().getName());
+            return super.getMBeanInfo(beanName);
+        }
+
+        @Override
+        public Set<ObjectName> queryNames(ObjectName name) throws IOException {
+            beanQueries++;
+            return super.queryNames(name);
+        }
+    }
+
+    /** Tests bulk_attribute_fetch issues a single getAttributes call per bean and collection. */
+    @Test
+    public void testBulkAttributeFetch() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=BulkFetch");
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_bulk_attribute_fetch.yaml");
+        int singleFetchesAfterInit = connection.singleFetches;
+
+        run();
+        assertEquals(5, getMetrics().size());
+        assertMetric("jmx.org.datadog.jmxfetch.test.should_be100", 100.0, Collections.<String>emptyList(), -1);
+        assertMetric("jmx.org.datadog.jmxfetch.test.int424242", 424242.0, Collections.<String>emptyList(), -1);
+        assertEquals(1, connection.bulkFetches);
+        assertEquals(singleFetchesAfterInit, connection.singleFetches);
+
+        run();
+        assertEquals(5, getMetrics().size());
+        assertEquals(2, connection.bulkFetches);
+        assertEquals(singleFetchesAfterInit, connection.singleFetches);
+    }
+
+    /** Tests composite and tabular values are fetched once per collection. */
+    @Test
+    public void testSubAttributeValuesFetchedOncePerCollection() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=SubAttributeFetch");
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_sub_attribute_fetch.yaml");
+
+        int singleFetches = connection.singleFetches;
+        run();
+        assertEquals(3, getMetrics().size());
+        assertMetric("complex.thisis10", 10.0, Collections.<String>emptyList(), -1);
+        assertMetric("tabular.bar", Arrays.asList("foo:1", "toto:tata"), -1);
+        // One fetch for the Hashmap and one for the Tabulardata attribute
+        assertEquals(singleFetches + 2, connection.singleFetches);
+    }
+
+    @Test
+    public void testCompositeDiscoveryDoesNotFetchValues() throws Exception {
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_composite_discovery.yaml");
+
+        // MXBean composite keys are resolved from the MBean info
+        assertEquals(0, connection.singleFetches);
+        run();
+        assertEquals(2, getMetrics().size());
+        assertEquals(2, connection.singleFetches);
+    }
+
+    @Test
+    public void testIncrementalBeanRefresh() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Incremental,id=1");
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        initApplication("jmx_incremental_bean_refresh.yaml");
+
+        run();
+        assertEquals(1, getMetrics().size());
+
+        // Beans registered after the initialization are matched on the next collection
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Incremental,id=2");
+        run();
+        assertEquals(2, getMetrics().size());
+        assertMetric("this.is.100", 100, Collections.<String>emptyList(), -1);
+
+        // Unregistered beans are dropped
+        ObjectName unregistered = objectNames.remove(0);
+        mbs.unregisterMBean(unregistered);
+        run();
+        assertEquals(1, getMetrics().size());
+        assertMetric("this.is.100", 100, Arrays.asList("id:2"), -1);
+    }
+
+    @Test
+    public void testMBeanInfoCache() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InfoCache,id=1");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InfoCache,id=2");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InfoCache,id=3");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InfoCache");
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_mbean_info_cache.yaml");
+
+        // One introspection per bean class and name structure
+        assertEquals(2, connection.beanInfoFetches);
+        run();
+        assertEquals(4, getMetrics().size());
+        assertMetric("this.is.100", 100, Arrays.asList("id:3"), -1);
+    }
+
+    @Test
+    public void testReuseInitState() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=ReuseInit,id=1");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=ReuseInit,id=2");
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_reuse_init_state.yaml");
+        assertEquals(2, connection.beanInfoFetches);
+
+        // Only the beans registered meanwhile are introspected by the rebuilt instance
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=ReuseInit,id=3");
+        Instance rebuilt = new Instance(getInstances().get(0), appConfig);
+        rebuilt.init(true);
+        assertEquals(3, connection.beanInfoFetches);
+        assertEquals(3, rebuilt.getMetrics().size());
+
+        // Unregistered beans are forgotten
+        ObjectName unregistered = objectNames.remove(0);
+        mbs.unregisterMBean(unregistered);
+        rebuilt.init(true);
+        assertEquals(3, connection.beanInfoFetches);
+        assertEquals(2, rebuilt.getMetrics().size());
+
+        // A bean registered again with another class is introspected again
+        ObjectName replaced = objectNames.get(0);
+        mbs.unregisterMBean(replaced);
+        mbs.registerMBean(new SimpleTestJavaApp() {}, replaced);
+        rebuilt.init(true);
+        assertEquals(4, connection.beanInfoFetches);
+        assertEquals(2, rebuilt.getMetrics().size());
+
+        // The info of a dynamic bean may change under the same class, it is never reused
+        mbs.unregisterMBean(replaced);
+        mbs.registerMBean(new MutableInfoBean(), replaced);
+        rebuilt.init(true);
+        assertEquals(5, connection.beanInfoFetches);
+        rebuilt.init(true);
+        assertEquals(6, connection.beanInfoFetches);
+        assertEquals(2, rebuilt.getMetrics().size());
+        rebuilt.cleanUp();
+    }
+
+    /** Bean whose info is not flagged as immutable, as for most dynamic MBeans. */
+    private static class MutableInfoBean extends StandardMBean {
+        MutableInfoBean() throws NotCompliantMBeanException {
+            super(new SimpleTestJavaApp(), SimpleTestJavaAppMBean.class);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanInfo info = super.getMBeanInfo();
+            return new MBeanInfo(info.getClassName(), info.getDescription(),
+                    info.getAttributes(), info.getConstructors(), info.getOperations(),
+                    info.getNotifications());
+        }
+    }
+
+    @Test
+    public void testReconnectInPlace() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InPlace,id=1");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InPlace,id=2");
+        final List<CountingConnection> connections = new ArrayList<CountingConnection>();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnectionFactory(new ConnectionFactory() {
+            @Override
+            public Connection createConnection(Map<String, Object> connectionParams)
+                    throws IOException {
+                CountingConnection connection = new CountingConnection();
+                connections.add(connection);
+                return connection;
+            }
+        });
+        initApplication("jmx_reconnect_in_place.yaml");
+        Instance instance = getInstances().get(0);
+        assertTrue(instance.isReconnectInPlace());
+        assertEquals(2, connections.get(0).beanInfoFetches);
+
+        // The bean list did not change, the attributes are read through the new connection
+        instance.disconnectAsync();
+        instance.init(true);
+        assertEquals(2, connections.size());
+        assertEquals(0, connections.get(1).beanInfoFetches);
+        assertEquals(2, instance.getMetrics().size());
+        assertEquals(2, connections.get(1).singleFetches);
+
+        // The beans are matched again once the bean list changed
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InPlace,id=3");
+        instance.init(true);
+        assertEquals(3, connections.size());
+        assertEquals(3, connections.get(2).beanInfoFetches);
+        assertEquals(3, instance.getMetrics().size());
+    }
+
+    /** An instance is not initialized again while a collection which timed out still runs. */
+    @Test
+    public void testReconnectInPlaceWaitsForStaleCollection() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=InPlace,id=1");
+        final AtomicBoolean blocking = new AtomicBoolean(false);
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnectionFactory(new ConnectionFactory() {
+            @Override
+            public Connection createConnection(Map<String, Object> connectionParams)
+                    throws IOException {
+                return new CountingConnection() {
+                    @Override
+                    public Object getAttribute(ObjectName objectName, String attributeName)
+                            throws AttributeNotFoundException, InstanceNotFoundException,
+                                    MBeanException, ReflectionException, IOException {
+                        if (blocking.get()) {
+                            reading.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                        }
+                        return super.getAttribute(objectName, attributeName);
+                    }
+                };
+            }
+        });
+        initApplication("jmx_reconnect_in_place.yaml");
+        final Instance instance = getInstances().get(0);
+        blocking.set(true);
+
+        Thread stale = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    instance.getMetrics();
+                } catch (IOException e) {
+                    // The collection is abandoned either way
+                }
+            }
+        });
+        stale.start();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        instance.disconnectAsync();
+        try {
+            instance.init(true);
+            fail("init should fail while a collection is running");
+        } catch (IOException e) {
+            // Expected, the recovery is attempted again later
+        }
+
+        release.countDown();
+        stale.join(5000);
+        instance.init(true);
+    }
+
+    @Test
+    public void testBeanDiscoveryThreads() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Discovery,id=" + i);
+        }
+        final CountingConnection connection = new CountingConnection();
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_bean_discovery_threads.yaml");
+
+        for (String thread : connection.beanInfoThreads) {
+            assertTrue(thread.startsWith("jmxfetch-discovery-jmx_test_instance-"));
+        }
+        assertTrue(connection.beanInfoThreads.size() > 1);
+
+        // The metric limit still applies once the beans are introspected
+        run();
+        assertEquals(5, getMetrics().size());
+
+        // The next match introspects the beans on the same pool, which is shut down on clean up
+        Instance instance = getInstances().get(0);
+        instance.init(false);
+        assertTrue(connection.beanInfoThreads.size() <= 4);
+        assertTrue(countDiscoveryThreads() > 0);
+        instance.cleanUp();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countDiscoveryThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, countDiscoveryThreads());
+    }
+
+    private static int countDiscoveryThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("jmxfetch-discovery-jmx_test_instance-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Metrics are reused from one collection to the next. */
+    @Test
+    public void testMetricsReusedAcrossCollections() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=MetricReuse");
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        initApplication("jmx_sub_attribute_fetch.yaml");
+
+        Instance instance = getInstances().get(0);
+        List<Metric> first = new ArrayList<Metric>(instance.getMetrics());
+        List<Metric> second = instance.getMetrics();
+        assertEquals(3, second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    /** A partial collection reports what it read and resumes from the attributes it missed. */
+    @Test
+    public void testPartialCollection() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Partial,id=1");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Partial,id=2");
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=Partial,id=3");
+        final CountingConnection connection = new CountingConnection() {
+            @Override
+            public Object getAttribute(ObjectName objectName, String attributeName)
+                    throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
+                            ReflectionException, IOException {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.getAttribute(objectName, attributeName);
+            }
+        };
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_partial_collection.yaml");
+        when(appConfig.getCollectionTimeout()).thenReturn(1);
+
+        // Two attributes are read before the deadline, the third one is read first next time
+        Instance instance = getInstances().get(0);
+        List<String> firstTags = getMetricTags(instance.getMetrics());
+        assertEquals(2, firstTags.size());
+        assertTrue(instance.isPartialCollectionReached());
+        List<String> secondTags = getMetricTags(instance.getMetrics());
+        assertEquals(2, secondTags.size());
+        assertTrue(instance.isPartialCollectionReached());
+
+        for (String id : Arrays.asList("id:1", "id:2", "id:3")) {
+            if (!firstTags.contains(id)) {
+                assertTrue(secondTags.contains(id));
+            }
+        }
+
+        // The deadline is counted from the submit time, a collection which waited for a thread
+        // has less time left
+        List<String> queuedTags =
+                getMetricTags(instance.getMetrics(System.currentTimeMillis() - 500));
+        assertEquals(1, queuedTags.size());
+        assertTrue(instance.isPartialCollectionReached());
+    }
+
+    private static List<String> getMetricTags(List<Metric> metrics) {
+        List<String> tags = new ArrayList<String>();
+        for (Metric metric : metrics) {
+            for (String tag : metric.getTags()) {
+                if (tag.startsWith("id:")) {
+                    tags.add(tag);
+                }
+            }
+        }
+        return tags;
+    }
+
+    /** Attributes read slowly in a row are only read once every few collections. */
+    @Test
+    public void testSlowAttributeDemotion() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=SlowAttribute");
+        final CountingConnection connection = new CountingConnection() {
+            @Override
+            public Object getAttribute(ObjectName objectName, String attributeName)
+                    throws AttributeNotFoundException, InstanceNotFoundException, MBeanException,
+                            ReflectionException, IOException {
+                if ("ShouldBe1000".equals(attributeName)) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.getAttribute(objectName, attributeName);
+            }
+        };
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_slow_attribute.yaml");
+
+        Instance instance = getInstances().get(0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, instance.getMetrics().size());
+        }
+
+        // The slow attribute is skipped 4 times, then read again
+        for (int i = 0; i < 4; i++) {
+            List<Metric> metrics = instance.getMetrics();
+            assertEquals(1, metrics.size());
+            assertEquals("this.is.100", metrics.get(0).getAlias());
+        }
+        assertEquals(2, instance.getMetrics().size());
+    }
+
+    /** A slow bulk fetch is not counted against the first attribute of the bean. */
+    @Test
+    public void testSlowBulkFetchDoesNotDemoteAttributes() throws Exception {
+        registerMBean(new SimpleTestJavaApp(), "org.datadog.jmxfetch.test:type=SlowBulkFetch");
+        final CountingConnection connection = new CountingConnection() {
+            @Override
+            public Map<String, Object> getAttributes(
+                    ObjectName objectName, String[] attributeNames)
+                    throws InstanceNotFoundException, ReflectionException, IOException {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.getAttributes(objectName, attributeNames);
+            }
+        };
+        when(appConfig.isTargetDirectInstances()).thenReturn(true);
+        useConnection(connection);
+        initApplication("jmx_slow_bulk_attribute_fetch.yaml");
+
+        Instance instance = getInstances().get(0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(2, instance.getMetrics().size());
+        }
+        assertEquals(5, connection.bulkFetches);
+    }
+
+    /** Instances with the same connection parameters share a connection and its bean list. */
+    @Test
+    public void testSharedConnections() throws Exception {
+        final List<CountingConnection> connections = new ArrayList<CountingConnection>();
+        SharedConnectionFactory factory = new SharedConnectionFactory(new ConnectionFactory() {
+            @Override
+            public Connection createConnection(Map<String, Object> connectionParams)
+                    throws IOException {
+                CountingConnection connection = new CountingConnection();
+                connections.add(connection);
+                return connection;
+            }
+        });
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("host", "localhost");
+        params.put("port", 9999);
+        params.put("name", "first");
+        Map<String, Object> otherParams = new HashMap<String, Object>(params);
+        otherParams.put("name", "second");
+        Map<String, Object> otherUserParams = new HashMap<String, Object>(params);
+        otherUserParams.put("user", "other");
+
+        Connection first = factory.createConnection(params);
+        Connection second = factory.createConnection(otherParams);
+        Connection otherUser = factory.createConnection(otherUserParams);
+        assertEquals(2, connections.size());
+        assertEquals(2, factory.getConnectionCount());
+
+        first.queryNames(null);
+        assertFalse(second.queryNames(null).isEmpty());
+        assertEquals(1, connections.get(0).beanQueries);
+
+        // Forcing a new connection does not reuse the shared one
+        Connection forced = factory.createNewConnection(params);
+        assertEquals(3, connections.size());
+        forced.queryNames(null);
+        assertEquals(1, connections.get(2).beanQueries);
+
+        // The connection is closed once released by all its instances
+        first.closeConnector();
+        assertFalse(first.isAlive());
+        assertTrue(second.isAlive());
+        second.closeConnector();
+        otherUser.closeConnector();
+        forced.closeConnector();
+        assertEquals(0, factory.getConnectionCount());
+    }
 }
@@ -0,0 +1,58 @@
+package org.datadog.jmxfetch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.datadog.jmxfetch.tasks.TaskProcessor;
+import org.junit.Test;
+
+public class TestRecoveryScheduler {
+
+    @Test
+    public void testBackoffBetweenFailedAttempts() throws Exception {
+        // null executor means embedded mode, attempts run right away
+        TaskProcessor processor = new TaskProcessor(null, null);
+        RecoveryScheduler scheduler = new RecoveryScheduler();
+        Instance broken = mock(Instance.class);
+        Instance failing = mock(Instance.class);
+        doThrow(new IOException("connection refused")).when(failing).init(true);
+
+        assertTrue(scheduler.track(broken, 0));
+        assertFalse(scheduler.track(broken, 0));
+        assertTrue(scheduler.isDue(broken, 0));
+
+        // First failure, next attempt in half to all of the base backoff
+        scheduler.submit(broken, new InstanceInitializingTask(failing, true), processor, 0);
+        assertFalse(scheduler.isDue(broken, 0));
+        List<RecoveryScheduler.RecoveryAttempt> attempts = scheduler.pollCompleted();
+        assertEquals(1, attempts.size());
+        scheduler.failed(attempts.get(0), 1000, 1000);
+        RecoveryScheduler.RecoveryState state = scheduler.getStates().iterator().next();
+        assertEquals(RecoveryScheduler.STATE_OPEN, state.getCircuitState());
+        assertEquals(1, state.getFailedAttempts());
+        assertTrue(state.getNextAttemptTime() >= 1500 && state.getNextAttemptTime() <= 2000);
+        assertFalse(scheduler.isDue(broken, 1000));
+        assertTrue(scheduler.isDue(broken, 2000));
+
+        // Second failure, the backoff doubles
+        scheduler.submit(broken, new InstanceInitializingTask(failing, true), processor, 2000);
+        attempts = scheduler.pollCompleted();
+        scheduler.failed(attempts.get(0), 2000, 1000);
+        assertEquals(2, state.getFailedAttempts());
+        assertTrue(state.getNextAttemptTime() >= 3000 && state.getNextAttemptTime() <= 4000);
+
+        // Recovery
+        scheduler.submit(broken, new InstanceInitializingTask(mock(Instance.class), true),
+                processor, 4000);
+        attempts = scheduler.pollCompleted();
+        assertTrue(attempts.get(0).isDone());
+        scheduler.recovered(attempts.get(0));
+        assertFalse(scheduler.getStates().iterator().hasNext());
+    }
+}
@@ -1,9 +1,26 @@
 package org.datadog.jmxfetch.reporter;
 
+import org.datadog.jmxfetch.Metric;
 import org.datadog.jmxfetch.Status;
+import org.datadog.jmxfetch.util.AppTelemetry;
 import org.junit.Test;
 
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ReporterTest {
 
@@ -16,4 +33,234 @@ public class ReporterTest {
         assertEquals(2, jsonReporter.statusToServiceCheckStatusValue(Status.STATUS_ERROR));
         assertEquals(3, jsonReporter.statusToServiceCheckStatusValue("XX_UNKNOWN__XX"));
     }
+
+    private static Metric newMetric(String alias, String metricType, double value) {
+        Metric metric = new Metric(alias, metricType, new String[] {"instance:foo"}, "check");
+        metric.setValue(value);
+        return metric;
+    }
+
+    @Test
+    public void seriesSurviveRebuiltMetrics() {
+        ConsoleReporter reporter = new ConsoleReporter();
+
+        reporter.sendMetrics(
+                Collections.singletonList(newMetric("foo.count", "monotonic_count", 10)),
+                "instance",
+                false);
+        assertEquals(0, reporter.getMetrics().size());
+
+        // A metric rebuilt after a bean refresh continues the same series
+        reporter.sendMetrics(
+                Collections.singletonList(newMetric("foo.count", "monotonic_count", 15)),
+                "instance",
+                false);
+        List<Map<String, Object>> metrics = reporter.getMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals(5.0, metrics.get(0).get("value"));
+
+        // Clearing the aggregator starts the series over
+        reporter.clearCountersAggregator("instance");
+        reporter.sendMetrics(
+                Collections.singletonList(newMetric("foo.count", "monotonic_count", 20)),
+                "instance",
+                false);
+        assertEquals(0, reporter.getMetrics().size());
+    }
+
+    @Test
+    public void instancesReportConcurrently() throws Exception {
+        final ConsoleReporter reporter = new ConsoleReporter();
+        final int instanceCount = 8;
+        final int seriesCount = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(instanceCount);
+        try {
+            for (int round = 0; round < 2; round++) {
+                final double value = 10 * (round + 1);
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int i = 0; i < instanceCount; i++) {
+                    final String instanceName = "instance_" + i;
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            List<Metric> metrics = new ArrayList<Metric>();
+                            for (int j = 0; j < seriesCount; j++) {
+                                metrics.add(newMetric("foo.count." + j, "monotonic_count", value));
+                            }
+                            reporter.sendMetrics(metrics, instanceName, false);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Each series of each instance reports a delta on the second round
+        List<Map<String, Object>> metrics = reporter.getMetrics();
+        assertEquals(instanceCount * seriesCount, metrics.size());
+        for (Map<String, Object> metric : metrics) {
+            assertEquals(10.0, metric.get("value"));
+        }
+    }
+
+    private static List<String> receiveLines(DatagramSocket socket, int count) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        byte[] data = new byte[65536];
+        while (lines.size() < count) {
+            DatagramPacket packet = new DatagramPacket(data, data.length);
+            socket.receive(packet);
+            String payload = new String(
+                    packet.getData(), 0, packet.getLength(), Charset.forName("UTF-8"));
+            assertTrue(packet.getLength() <= 1432);
+            lines.addAll(Arrays.asList(payload.split("\n")));
+        }
+        return lines;
+    }
+
+    @Test
+    public void statsdBatchWritesPreSerializedLines() throws Exception {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        socket.setSoTimeout(10000);
+        try {
+            StatsdReporter reporter = new StatsdReporter(
+                    "127.0.0.1", socket.getLocalPort(), false, 4096, false, 0, 0, true);
+            Metric gauge = newMetric("foo.gauge", "gauge", 1.5);
+            Metric histogram = newMetric("foo.histogram", "histogram", 42);
+            Metric count = newMetric("foo.count", "monotonic_count", 10);
+            List<Metric> metrics = Arrays.asList(gauge, histogram, count);
+            reporter.sendMetrics(metrics, "instance", false);
+            assertEquals(
+                    Arrays.asList("foo.gauge:1.5|g|#instance:foo",
+                            "foo.histogram:42|h|#instance:foo"),
+                    receiveLines(socket, 2));
+
+            // Pre-serialized lines are reused with the new values
+            gauge.setValue(-3);
+            count.setValue(25);
+            reporter.sendMetrics(metrics, "instance", false);
+            assertEquals(
+                    Arrays.asList("foo.gauge:-3|g|#instance:foo",
+                            "foo.histogram:42|h|#instance:foo",
+                            "foo.count:15|c|#instance:foo"),
+                    receiveLines(socket, 3));
+
+            // Metrics not fitting in a datagram are split across several ones
+            List<Metric> manyMetrics = new ArrayList<Metric>();
+            for (int i = 0; i < 500; i++) {
+                manyMetrics.add(newMetric("foo.gauge." + i, "gauge", i));
+            }
+            reporter.sendMetrics(manyMetrics, "instance", false);
+            List<String> lines = receiveLines(socket, 500);
+            assertEquals(500, lines.size());
+            assertEquals("foo.gauge.499:499|g|#instance:foo", lines.get(499));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void statsdBatchCountsPointsInAppTelemetry() throws Exception {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        socket.setSoTimeout(10000);
+        try {
+            StatsdReporter reporter = new StatsdReporter(
+                    "127.0.0.1", socket.getLocalPort(), false, 4096, true, 0, 0, true);
+            List<Metric> metrics = Arrays.asList(
+                    newMetric("foo.gauge.1", "gauge", 1),
+                    newMetric("foo.gauge.2", "gauge", 2),
+                    newMetric("foo.gauge.3", "gauge", 3));
+            reporter.sendMetrics(metrics, "instance", false);
+            assertEquals(3, receiveLines(socket, 3).size());
+
+            // The sender counts the datagram once sent, which may be after it is received
+            AppTelemetry telemetry = new AppTelemetry();
+            long deadline = System.currentTimeMillis() + 10000;
+            do {
+                reporter.updateTelemetry(telemetry);
+            } while (telemetry.getStatsdBatchPointsSent() < 3
+                    && System.currentTimeMillis() < deadline);
+            assertEquals(3, telemetry.getStatsdBatchPointsSent());
+            assertEquals(0, telemetry.getStatsdBatchPointsDropped());
+            assertTrue(telemetry.getStatsdBatchPacketsSent() > 0);
+            assertTrue(telemetry.getStatsdBatchBytesSent() > 0);
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void unchangedGaugesAreSentOnHeartbeat() throws Exception {
+        ConsoleReporter reporter = new ConsoleReporter();
+        Metric gauge = newMetric("foo.gauge", "gauge", 1);
+        Metric histogram = newMetric("foo.histogram", "histogram", 1);
+        List<Metric> metrics = Arrays.asList(gauge, histogram);
+
+        reporter.sendMetrics(metrics, "instance", false, 1000);
+        assertEquals(2, reporter.getMetrics().size());
+
+        // Unchanged gauges are skipped, histograms are always sent
+        reporter.sendMetrics(metrics, "instance", false, 1000);
+        List<Map<String, Object>> sent = reporter.getMetrics();
+        assertEquals(1, sent.size());
+        assertEquals("foo.histogram", sent.get(0).get("name"));
+
+        gauge.setValue(2);
+        reporter.sendMetrics(metrics, "instance", false, 1000);
+        assertEquals(2, reporter.getMetrics().size());
+
+        // Once the heartbeat elapsed, unchanged gauges are sent again
+        Thread.sleep(1100);
+        reporter.sendMetrics(metrics, "instance", false, 1000);
+        assertEquals(2, reporter.getMetrics().size());
+
+        // Without a heartbeat, gauges are sent on every collection
+        reporter.sendMetrics(metrics, "instance", false);
+        assertEquals(2, reporter.getMetrics().size());
+    }
+
+    @Test
+    public void seriesStateSurvivesRestarts() throws Exception {
+        File file = File.createTempFile("jmxfetch_series_state", null);
+        file.deleteOnExit();
+        ConsoleReporter reporter = new ConsoleReporter();
+        reporter.sendMetrics(
+                Arrays.asList(
+                        newMetric("foo.count", "monotonic_count", 10),
+                        newMetric("foo.rate", "counter", 100)),
+                "instance",
+                false);
+        assertEquals(0, reporter.getMetrics().size());
+        reporter.saveSeriesState(file);
+
+        // A new reporter resumes the series from the saved samples
+        ConsoleReporter restarted = new ConsoleReporter();
+        assertEquals(2, restarted.loadSeriesState(file, 60000));
+        Thread.sleep(10);
+        restarted.sendMetrics(
+                Arrays.asList(
+                        newMetric("foo.count", "monotonic_count", 25),
+                        newMetric("foo.rate", "counter", 200)),
+                "instance",
+                false);
+        List<Map<String, Object>> metrics = restarted.getMetrics();
+        assertEquals(2, metrics.size());
+        assertEquals("foo.count", metrics.get(0).get("name"));
+        assertEquals(15.0, metrics.get(0).get("value"));
+        assertEquals("foo.rate", metrics.get(1).get("name"));
+        assertTrue((Double) metrics.get(1).get("value") > 0);
+
+        // Samples older than the maximum age are not restored
+        Thread.sleep(10);
+        ConsoleReporter stale = new ConsoleReporter();
+        assertEquals(0, stale.loadSeriesState(file, 1));
+        stale.sendMetrics(
+                Collections.singletonList(newMetric("foo.count", "monotonic_count", 25)),
+                "instance",
+                false);
+        assertEquals(0, stale.getMetrics().size());
+    }
 }
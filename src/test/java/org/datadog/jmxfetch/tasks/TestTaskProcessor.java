@@ -5,7 +5,9 @@ import org.datadog.jmxfetch.InstanceTask;
 import org.datadog.jmxfetch.reporter.Reporter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -146,6 +148,87 @@ public class TestTaskProcessor {
         }
     }
 
+    /**
+     * Test Task Processor handing out statuses as tasks complete
+     */
+    @Test
+    public void testTaskProcessorAsCompleted() throws Throwable {
+
+        ExecutorService testThreadPool = Executors.newFixedThreadPool(2);
+        TaskProcessor testProcessor = new TaskProcessor(testThreadPool, null);
+
+        List<InstanceTask<Boolean>> instanceTestTasks = new ArrayList<InstanceTask<Boolean>>();
+
+        for (Instance instance: instances) {
+            instanceTestTasks.add(new TestSimpleTask(instance));
+        }
+
+        final List<InstanceTask<Boolean>> completedTasks = new ArrayList<InstanceTask<Boolean>>();
+        final List<TaskStatusHandler> statuses = new ArrayList<TaskStatusHandler>();
+        final List<Long> completionTimes = new ArrayList<Long>();
+        final long start = System.currentTimeMillis();
+
+        // 4 second timeout, 2 runners in thread, not enough time for all tasks - last one should fail.
+        testProcessor.processTasksAsCompleted(
+                instanceTestTasks, 4, TimeUnit.SECONDS,
+                new TaskMethod<Boolean>() {
+                    @Override
+                    public TaskStatusHandler invoke(Instance instance, Future<Boolean> future, Reporter reporter) {
+                        return TestTaskProcessor.processTestResults(instance, future, reporter);
+                    };
+                },
+                new TaskStatusListener<Boolean>() {
+                    @Override
+                    public void onStatus(InstanceTask<Boolean> task, TaskStatusHandler status) {
+                        completedTasks.add(task);
+                        statuses.add(status);
+                        completionTimes.add(System.currentTimeMillis() - start);
+                    }
+                });
+
+        assertEquals(3, statuses.size());
+        // the first two tasks are handed out without waiting for the timeout
+        for (int i = 0; i < 2; i++) {
+            assertTrue(completionTimes.get(i) < 4000);
+            statuses.get(i).raiseForStatus();
+            assertTrue((Boolean)statuses.get(i).getData());
+        }
+        assertEquals(instanceTestTasks.get(2), completedTasks.get(2));
+        try {
+            statuses.get(2).raiseForStatus();
+            fail("last task should have timed out");
+        } catch (CancellationException ce) {
+            // expected
+        }
+    }
+
+    /**
+     * Test Task Processor with an executor which is not a thread pool, e.g. virtual threads
+     */
+    @Test
+    public void testTaskProcessorThreadPerTask() throws Throwable {
+        // not a ThreadPoolExecutor, like the virtual thread per task executor
+        ExecutorService testExecutor = Executors.newSingleThreadExecutor();
+        TaskProcessor testProcessor = new TaskProcessor(testExecutor, null);
+
+        assertTrue(testProcessor.ready());
+
+        List<InstanceTask<Boolean>> instanceTestTasks = new ArrayList<InstanceTask<Boolean>>();
+        instanceTestTasks.add(new TestSimpleTask(instances.get(0)));
+        List<TaskStatusHandler> statuses = testProcessor.processTasks(
+                instanceTestTasks, 10, TimeUnit.SECONDS,
+                new TaskMethod<Boolean>() {
+                    @Override
+                    public TaskStatusHandler invoke(Instance instance, Future<Boolean> future, Reporter reporter) {
+                        return TestTaskProcessor.processTestResults(instance, future, reporter);
+                    };
+                });
+        assertAllStatusGreen(statuses);
+
+        testProcessor.stop();
+        assertFalse(testProcessor.ready());
+    }
+
     @Test
     public void embeddedTaskProcessor() throws Throwable {
         // null executor means embedded mode